@@ -143,6 +143,7 @@ public class SJ3DDemo {
 
         final RenderSettings settings = new RenderSettings();
         settings.setBackgroundColor(0x201005);
+        settings.setTripleBuffering(true); // lets paint() run without locking
 
         final World world = new World(W, H, settings);
         final Texture texture = createTexture();
@@ -174,9 +175,7 @@ public class SJ3DDemo {
         final JPanel panel = new JPanel() {
             @Override
             public void paint(Graphics g) {
-                synchronized (world) {
-                    g.drawImage(world.getImage(), 0, 0, W, H, null);
-                }
+                g.drawImage(world.getImage(), 0, 0, W, H, null);
                 g.setColor(Color.WHITE);
                 float fps = fpsCounter.getFPS();
                 g.drawString(
@@ -207,16 +206,14 @@ public class SJ3DDemo {
             float y = (float)Math.cos((float)delta / 3000f) * 1f + 2.5f;
             float z = (float)Math.sin((float)delta / 1000f) * 3f;
 
-            synchronized (world) { // avoid conflicts with the paint thread
-                camera.setPos(x * 3, 5, z * 3);
-                camera.lookAt(0, 0, 0);
+            camera.setPos(x * 3, 5, z * 3);
+            camera.lookAt(0, 0, 0);
 
-                model.setRotation(x, x, x);
-                model.setScale(y, y, y);
-                model.setPos(0, z, 0);
+            model.setRotation(x, x, x);
+            model.setScale(y, y, y);
+            model.setPos(0, z, 0);
 
-                world.render();
-            }
+            world.render();
 
             fpsCounter.tick();
             panel.repaint();
@@ -0,0 +1,109 @@
+package demo;
+
+import java.util.Random;
+
+import sj3d.Material;
+import sj3d.Model;
+import sj3d.RenderSettings;
+import sj3d.Texture;
+import sj3d.Triangle;
+import sj3d.UVCoord;
+import sj3d.World;
+
+/**
+ * Compares row-by-row and tiled texture storage on a large textured square
+ * turned to several angles on the screen.  Row-by-row storage is fastest when
+ * the texture's rows run along the screen's; tiled storage should cost about
+ * the same whatever the angle.
+ */
+public class TextureBenchmark {
+
+    private static final int W = 1024;
+    private static final int H = 768;
+    private static final int TEXTURE_SIZE = 1024;
+    private static final int FRAMES = 20;
+    private static final int RUNS = 10;
+
+    private static Texture createTexture() {
+        final Texture tex = new Texture(TEXTURE_SIZE, TEXTURE_SIZE);
+        final Random random = new Random(1);
+        for (int i = 0; i < tex.pixels.length; ++i) {
+            tex.pixels[i] = random.nextInt();
+        }
+        tex.updateMipmaps();
+        return tex;
+    }
+
+    /**
+     * Create a square with corners (-1, -1, 0) and (1, 1, 0), with the whole
+     * texture on it.
+     */
+    private static Model createSquare(Texture tex) {
+        final Model m = new Model();
+        m.material = Material.flatTextured(tex);
+
+        m.addFrame();
+
+        m.addVertex(-1, -1, 0);
+        m.addVertex(1, -1, 0);
+        m.addVertex(-1, 1, 0);
+        m.addVertex(1, 1, 0);
+
+        final UVCoord uv0 = new UVCoord(0, 0);
+        final UVCoord uv1 = new UVCoord(1, 0);
+        final UVCoord uv2 = new UVCoord(0, 1);
+        final UVCoord uv3 = new UVCoord(1, 1);
+
+        // Both sides, so it shows whichever way the winding ends up
+        m.addTriangle(new Triangle(m, 0, 1, 2, uv0, uv1, uv2));
+        m.addTriangle(new Triangle(m, 1, 3, 2, uv1, uv3, uv2));
+        m.addTriangle(new Triangle(m, 0, 2, 1, uv0, uv2, uv1));
+        m.addTriangle(new Triangle(m, 1, 2, 3, uv1, uv2, uv3));
+
+        return m;
+    }
+
+    /**
+     * Render frames of the square turned by an angle, and return the fastest
+     * average time per frame of several runs, in milliseconds.
+     */
+    private static double time(boolean tiled, float angle, Texture tex) {
+        final RenderSettings settings = new RenderSettings();
+        settings.setMipmapping(true);
+        settings.setTextureTiling(tiled);
+
+        try (World world = new World(W, H, settings)) {
+            final Model square = createSquare(tex);
+            // Big enough that a texel covers about a pixel, so the full-size
+            // level is read
+            square.setScale(1.6f, 1.6f, 1);
+            square.setRotation(0, 0, angle);
+            world.addModel(square);
+            world.setLighting(0, 0, -1, 1, 1);
+            world.getCamera().setPos(0, 0, -3);
+            world.getCamera().lookAt(0, 0, 0);
+
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; ++run) {
+                final long start = System.nanoTime();
+                for (int frame = 0; frame < FRAMES; ++frame) {
+                    world.render();
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            return best / 1e6 / FRAMES;
+        }
+    }
+
+    public static void main(String[] args) {
+        final Texture tex = createTexture();
+        System.out.println("Texture " + TEXTURE_SIZE + "x" + TEXTURE_SIZE + ", " + W + "x" + H + " pixels");
+        System.out.println("angle    rows (ms)  tiled (ms)");
+        for (int degrees = 0; degrees <= 90; degrees += 15) {
+            final float angle = (float) Math.toRadians(degrees);
+            System.out.println(String.format("%5d %12.2f %11.2f",
+                    degrees, time(false, angle, tex), time(true, angle, tex)));
+        }
+    }
+
+}
@@ -9,41 +9,46 @@ UNTEXTURED = "Untextured"
 TEXTURED = "Textured"
 ALWAYS = None
 
-# INPUT: Model model, Triangle t, Vertex a, b, c, UVCoord uva, uvb, uvc, Material material, Vector lightVector, float lightIntensity, float lightAmbient
+# Light amounts are turned into integer light levels: indices into the
+# material's table of shades for untextured modes, or fixed-point factors to
+# scale texels by for textured ones.
+LIGHT = "Math.min(Math.max((int) (lightAmt * lightScale + 0.5f), 0), lightMax)"
+
+# INPUT: int modelId, Material material, float[] tri, int off, int a, b, c (offsets of the vertex records)
 PER_TRIANGLE = [
-    (ALWAYS, "float", "Kd", "lightIntensity * material.diffuseValue"),
-    (ALWAYS, "float", "Ka", "lightAmbient * material.ambientValue"),
-    (FLAT,   "float", "lightAmt", "Math.max(normal.dot(lightVector), 0) * (Kd - Ka) + Ka"),
-    (UNTEXTURED, "int", "red", "(material.color >> 16) & 0xff"),
-    (UNTEXTURED, "int", "green", "(material.color >> 8) & 0xff"),
-    (UNTEXTURED, "int", "blue", "(material.color) & 0xff"),
-    ([FLAT, UNTEXTURED], "int", "color", "(int) (blue * lightAmt) | (((int) (green * lightAmt)) << 8) | (((int) (red * lightAmt)) << 16)"),
+    (UNTEXTURED, "Material.Shades", "shades", "material.getShades(lightIntensity, lightAmbient)"),
+    (UNTEXTURED, "int[]", "shadeTable", "shades.table"),
+    (UNTEXTURED, "float", "lightScale", "shades.scale"),
+    (UNTEXTURED, "int", "lightMax", "Material.SHADE_LEVELS - 1"),
+    (TEXTURED, "float", "lightScale", "LIGHT_ONE"),
+    (TEXTURED, "int", "lightMax", "LIGHT_ONE"),
+    (FLAT,   "int", "light", LIGHT.replace("lightAmt", "tri[off + L]")),
+    ([FLAT, UNTEXTURED], "int", "color", "shadeTable[light]"),
     (TEXTURED, "Texture", "texture", "material.texture"),
     (TEXTURED, "float", "texXMax", "texture.width - 1"),
     (TEXTURED, "float", "texYMax", "texture.height - 1"),
 ]
 
-# INPUT: Vertex vert, UVCoord uv, any value or input in PER_TRIANGLE
+# INPUT: int vert (offset of the vertex record), any value or input in PER_TRIANGLE
+# (the half-space rasterizer uses all but x and y as planes over the screen)
 PER_VERTEX = [
-    (SMOOTH, "float", "lightAmt", "Math.max(vert.n.dot(lightVector), 0) * (Kd - Ka) + Ka")
+    (ALWAYS, "float", "x", "tri[vert + X]"),
+    (ALWAYS, "int", "y", "(int) tri[vert + Y]"),
+    (ALWAYS, "float", "z", "tri[vert + Z]"),
+    (SMOOTH, "float", "lightAmt", "tri[vert + L]"),
+    (TEXTURED, "float", "texu", "tri[vert + U]"),
+    (TEXTURED, "float", "texv", "tri[vert + V]"),
 ]
-for a in ["x", "y", "z"]:
-    t = "int" if a == "y" else "float"
-    PER_VERTEX.append((ALWAYS, t, a, "{}vert.proj{}".format("({})".format(t) if t != "float" else "", a.upper())))
-for a in ["u", "v"]:
-    PER_VERTEX.append((TEXTURED, "float", "tex" + a, "uv." + a + " * vertz"))
 
 # INPUT: any value in PER_TRIANGLE or PER_VERTEX, any input to PER_TRIANGLE
 # OUTPUT: int color
 PER_PIXEL = [
-    ([SMOOTH, UNTEXTURED], "int", "color", "(int) (blue * lightAmt) | (((int) (green * lightAmt)) << 8) | (((int) (red * lightAmt)) << 16)"),
+    (SMOOTH, "int", "light", LIGHT),
+    ([SMOOTH, UNTEXTURED], "int", "color", "shadeTable[light]"),
     (TEXTURED, "float", "recip", "1/z"),
     (TEXTURED, "int", "tex_index", "((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax)"),
     (TEXTURED, "int", "base_color", "texture.pixels[tex_index]"),
-    (TEXTURED, "int", "red", "(base_color >> 16) & 0xff"),
-    (TEXTURED, "int", "green", "(base_color >> 8) & 0xff"),
-    (TEXTURED, "int", "blue", "(base_color) & 0xff"),
-    (TEXTURED, "int", "color", "(int) (blue * lightAmt) | (((int) (green * lightAmt)) << 8) | (((int) (red * lightAmt)) << 16)")
+    (TEXTURED, "int", "color", "((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00)")
 ]
 
 gen = ""
@@ -51,7 +56,10 @@ def write(s):
     global gen
     gen += s + "\n"
 
-write("switch(material.mode) {")
+MODES = [("FLAT", False, False), ("SMOOTH", True, False), ("TEXTURED", False, True), ("SMOOTH_TEXTURED", True, True)]
+
+def method_name(prefix, mode):
+    return prefix + "".join(word.capitalize() for word in mode.split("_"))
 
 def mode_matches(smooth, textured, filter):
     if filter == ALWAYS:
@@ -66,27 +74,247 @@ def mode_matches(smooth, textured, filter):
         return textured;
     return (SMOOTH if smooth else FLAT) in filter and (TEXTURED if textured else UNTEXTURED) in filter
 
-for (mode, smooth, textured) in [("FLAT", False, False), ("SMOOTH", True, False), ("TEXTURED", False, True), ("SMOOTH_TEXTURED", True, True)]:
+# Edge and span values are computed directly from the vertex they start at,
+# rather than accumulated from the previous row or pixel.  That way a pixel
+# gets the same value no matter where the clipping rectangle starts.  The first
+# pixel of a span may start left of the edge; it takes the edge's value rather
+# than extrapolating past it, so no pixel is nearer than the triangle's nearest
+# vertex (see OcclusionBuffer).  Smooth light levels are interpolated in fixed
+# point from the first pixel of the span, whether or not it is clipped, and
+# kept between the levels at its ends.
+#
+# Each mode gets a method of its own: HotSpot will not compile methods of more
+# than 8000 bytes of bytecode, and all four modes together are bigger.
+#
+# Textured modes also get a subdivided method, which divides by z only at the
+# ends of segments of the span and interpolates the texture coordinates
+# linearly in between.  Segments are cut on a grid of screen columns so that
+# they do not depend on the clipping rectangle, and texture coordinates are
+# clamped only at their ends.
+#
+# Mipmapped methods, for power-of-two textures, choose a level for each span
+# from the texture gradients in its middle, and wrap texture coordinates
+# around with masks rather than clamping them.  Tiled methods do the same on
+# levels stored in square tiles (see Texture.getTiledLevels).
+#
+# Deferred shading splits the work in two: a visibility method that only
+# rasterizes depth, storing triangle numbers in place of colors, and for each
+# variant a shading method that works out one row of a triangle exactly as
+# the scanline method does and shades a run of its pixels, without depth tests.
+
+SMOOTH_LIGHT = "Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh)"
+SUBDIVIDED_TEX_INDEX = "((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX)"
+MIPMAPPED_TEX_XY = [("((int) Math.floor(texu * recip * texWidth)) & umask", "((int) Math.floor(texv * recip * texHeight)) & vmask"),
+                    ("((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask", "((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask")]
+MIPMAPPED_TEX_INDEX = "(texY << ushift) | texX"
+TILED_TEX_INDEX = "((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask)"
+
+# (mipmapped, tiled) for each texture layout
+LAYOUTS = [(False, False), (True, False), (True, True)]
+VARIANTS = [m + (s,) + l for m in MODES for l in (LAYOUTS if m[2] else LAYOUTS[:1]) for s in ([False, True] if m[2] else [False])]
+
+FORWARD, VISIBILITY, SHADING = "forward", "visibility", "shading"
+
+def variant_name(prefix, mode, subdivided, mipmapped, tiled):
+    return method_name(prefix, mode) + ("Tiled" if tiled else "Mipmapped" if mipmapped else "") + ("Subdivided" if subdivided else "")
+
+def write_dispatch(prefix, call):
+    write("switch(material.mode) {")
+    for (mode, _, textured) in MODES:
+        write("        case Material.{}:".format(mode))
+        if textured:
+            write("            if (mipmapping && material.texture.isPowerOfTwo()) {")
+            for tiled in [True, False]:
+                write("                if (textureTiling) {" if tiled else "                } else {")
+                write("                    if (subdivision > 1) {")
+                write("                        " + variant_name(prefix, mode, True, True, tiled) + call)
+                write("                    } else {")
+                write("                        " + variant_name(prefix, mode, False, True, tiled) + call)
+                write("                    }")
+            write("                }")
+            write("            } else if (subdivision > 1) {")
+            write("                " + variant_name(prefix, mode, True, False, False) + call)
+            write("            } else {")
+            write("                " + variant_name(prefix, mode, False, False, False) + call)
+            write("            }")
+        else:
+            write("            " + method_name(prefix, mode) + call)
+        write("            break;")
+    write("        }")
+
+write_dispatch("scanline", "(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);")
+dispatch = gen
+gen = ""
+
+write_dispatch("shade", "(material, tri, off, y, x0, x1);")
+shading_dispatch = gen
+gen = ""
+
+def texture_pixel_values(pp, textured, subdivided, mipmapped, tiled):
+    """Rewrite the per-pixel values to read the texture as a variant does."""
+    if subdivided:
+        pp = [(t, v, e) for (t, v, e) in pp if v != "recip"]
+    if textured:
+        if mipmapped:
+            (tex_x, tex_y) = MIPMAPPED_TEX_XY[subdivided]
+            tex_index = TILED_TEX_INDEX if tiled else MIPMAPPED_TEX_INDEX
+            i = [v for (_, v, _) in pp].index("tex_index")
+            pp = pp[:i] + [("int", "texX", tex_x), ("int", "texY", tex_y), ("int", "tex_index", tex_index)] + pp[i + 1:]
+            pp = [(t, v, "texels[tex_index]" if v == "base_color" else e) for (t, v, e) in pp]
+        elif subdivided:
+            pp = [(t, v, SUBDIVIDED_TEX_INDEX if v == "tex_index" else e) for (t, v, e) in pp]
+    return pp
+
+def write_mip_level(indent, level, tiled):
+    """Write the code that reads the mipmap level chosen as level."""
+    write(indent + "final int level = " + level)
+    write(indent + "final int[] texels = levels[level];")
+    write(indent + "final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);")
+    write(indent + "final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;")
+    write(indent + "final float texWidth = 1 << ushift, texHeight = 1 << vshift;")
+    if tiled:
+        write(indent + "final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;")
+        write(indent + "final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;")
+
+def write_row(kind, smooth, textured, subdivided, mipmapped, tiled, pv, pp, start_counter, end_counter):
+    """Write the code for one row of a triangle, from the edge values to the
+    end of the pixel loop, at the indentation of a row loop body."""
+    for (t, v, _) in pv:
+        if v == "y":
+            continue
+        for (se, counter) in [("s", start_counter), ("e", end_counter)]:
+            write("                final {t} {se}{v} = {o}{v} + (y - {o}y) * d{v}_{counter};".format(t=t, se=se, v=v, o=counter[0], counter=counter))
+    for (t, v, _) in pv:
+        if v == "y" or v == "x":
+            continue
+        write("                final {t} d{v} = (s{v} - e{v}) / (sx - ex);".format(t=t, v=v))
+    write("                final int row = y * width;")
+    if kind == SHADING:
+        write("                final int xstart = x0, xend = x1;")
+    else:
+        write("                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);")
+        write("                fragments += Math.max(xend - xstart, 0);")
+    if smooth:
+        write("                final int lightX = (int) sx;")
+        write("                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;")
+        write("                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);")
+        write("                final int slight = {}, elight = {};".format(LIGHT.replace("lightAmt", "slightAmt"), LIGHT.replace("lightAmt", "elightAmt")))
+        write("                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);")
+    if kind == FORWARD and not textured:
+        write("                if (spans != null && xend - xstart >= SpanShader.MIN_LENGTH) {")
+        if smooth:
+            write("                    shaded += spans.smooth(zbuf, pixels, idbuf, modelId, row, xstart, xend, sx, sz, dz, lightX, lightStart, lightStep, lightLow, lightHigh, shadeTable, ALPHA);")
+        else:
+            write("                    shaded += spans.flat(zbuf, pixels, idbuf, modelId, row, xstart, xend, sx, sz, dz, color | ALPHA);")
+        write("                    continue;")
+        write("                }")
+    if mipmapped:
+        # Gradients along y follow from those along x and along edge a-c
+        write("                final float mid = (ex - sx) * 0.5f;")
+        write_mip_level("                ", "mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,\n"
+                        "                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);", tiled)
+    indent = "                "
+    if subdivided:
+        write("                for (int x = xstart; x < xend;) {")
+        write("                    final int segment = x & ~(subdivision - 1);")
+        write("                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);")
+        write("                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);")
+        write("                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);")
+        if mipmapped:
+            write("                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;")
+            write("                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;")
+            write("                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);")
+            write("                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);")
+        else:
+            write("                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;")
+            write("                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;")
+            write("                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);")
+            write("                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);")
+        write("                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {")
+        indent = "                    "
+    else:
+        write("                for (int x = xstart; x < xend; ++x) {")
+    write(indent + "    final int index = row + x;")
+    write(indent + "    final float span = Math.max(x - sx, 0);")
+    write(indent + "    final float z = sz + span * dz;")
+    inner = indent + "    "
+    if kind != SHADING:
+        write(indent + "    if (zbuf[index] < z) {")
+        inner = indent + "        "
+    for (t, v, _) in pv:
+        if v in ("y", "x", "z", "lightAmt") or (subdivided and v in ("texu", "texv")):
+            continue
+        write(inner + "final {t} {v} = s{v} + span * d{v};".format(t=t, v=v))
+    for (t, v, e) in pp:
+        write(inner + "final {t} {v} = {e};".format(t=t, v=v, e=e))
+    if kind == SHADING:
+        write(inner + "pixels[index] = color | ALPHA;")
+    else:
+        write(inner + "zbuf[index] = z;")
+        write(inner + ("pixels[index] = id;" if kind == VISIBILITY else "pixels[index] = color | ALPHA;"))
+        write(inner + "if (idbuf != null) {")
+        write(inner + "    idbuf[index] = modelId;")
+        write(inner + "}")
+        if kind == FORWARD:
+            write(inner + "++shaded;")
+        write(indent + "    }")
+    write(indent + "}")
+    if subdivided:
+        write("                }")
+
+def write_method(kind, mode, smooth, textured, subdivided, mipmapped, tiled):
 
     pt = [(x[1], x[2], x[3]) for x in PER_TRIANGLE if mode_matches(smooth, textured, x[0])]
     pv = [(x[1], x[2], x[3]) for x in PER_VERTEX   if mode_matches(smooth, textured, x[0])]
     pp = [(x[1], x[2], x[3]) for x in PER_PIXEL    if mode_matches(smooth, textured, x[0])]
+    if kind == VISIBILITY:
+        pt = []
+        pv = [x for x in pv if x[1] in ("x", "y", "z")]
+        pp = []
+    if smooth:
+        pp = [(t, v, SMOOTH_LIGHT if v == "light" else e) for (t, v, e) in pp]
+    pp = texture_pixel_values(pp, textured, subdivided, mipmapped, tiled)
 
-    write("        case Material.{}: {{".format(mode))
+    if kind == VISIBILITY:
+        write("    private void scanlineVisibility(final int modelId, final float[] tri, final int off, final int id,")
+        write("            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {")
+    elif kind == SHADING:
+        write("    private void {}(final Material material, final float[] tri, final int off,".format(variant_name("shade", mode, subdivided, mipmapped, tiled)))
+        write("            final int y, final int x0, final int x1) {")
+    else:
+        write("    private void {}(final int modelId, final Material material,".format(variant_name("scanline", mode, subdivided, mipmapped, tiled)))
+        write("            final float[] tri, final int off,")
+        write("            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {")
+    write("")
+    write("        // Offsets of the vertex records")
+    write("        final int a = off;")
+    write("        final int b = off + VERTEX_STRIDE;")
+    write("        final int c = off + 2 * VERTEX_STRIDE;")
+    write("")
+    if kind == FORWARD:
+        write("        // Pixels covered, and pixels that passed the depth test")
+        write("        int fragments = 0, shaded = 0;")
+        write("")
+    elif kind == VISIBILITY:
+        write("        // Pixels covered")
+        write("        int fragments = 0;")
+        write("")
 
     for (t, v, e) in pt:
         write("        final {} {} = {};".format(t, v, e))
+    if mipmapped:
+        write("        final int[][] levels = texture.{}();".format("getTiledLevels" if tiled else "getLevels"))
     for vertex in ["a", "b", "c"]:
         for (t, v, e) in pv:
-            write("        final {} {}{} = {};".format(t, vertex, v, e.replace("vert", vertex).replace("uv", "uv" + vertex)))
+            write("        final {} {}{} = {};".format(t, vertex, v, e.replace("vert", vertex)))
     for (t, v, _) in pv:
         for vert1 in ["a", "b"]:
             for vert2 in ["b", "c"]:
                 if vert1 < vert2 and v != "y":
                     write("        final {t} d{v}_{v1}{v2} = {e};".format(t=t, v1=vert1, v2=vert2, v=v, e="({v1}y == {v2}y) ? ({v2}{v}-{v1}{v}) : (({v1}{v}-{v2}{v}) / ({v1}y-{v2}y))".format(v1=vert1, v2=vert2, v=v)))
 
-    write("        int y = Math.max(ay, 0);")
-    write("        int relativeStartY = y - ay;")
+    if kind != SHADING:
+        write("        int y = Math.max(ay, clipY0);")
     for toRight in [True, False]:
         if toRight:
             write("        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c")
@@ -94,51 +322,214 @@ for (mode, smooth, textured) in [("FLAT", False, False), ("SMOOTH", True, False)
             write("        } else { // case 2: point b is left of line a-c")
         for top in [True, False]:
             (start, end) = ("a", "b") if top else ("b", "c")
-            write("            {new}yend = Math.min({}y, height);".format(end, new=("int " if top else "")))
-            (start_counter, end_counter) = ("ac".format(v=v), "{start}{end}".format(v=v, start=start, end=end))
+            (start_counter, end_counter) = ("ac", "{start}{end}".format(start=start, end=end))
             if not toRight:
                 (start_counter, end_counter) = (end_counter, start_counter)
-            if not top:
-                write("            relativeStartY = y - by;")
-            for (t, v, _) in pv:
-                if v == "y":
-                    continue
-                if top:
-                    write("            {t} s{v} = a{v} + relativeStartY * d{v}_{start_counter};".format(t=t, v=v, start_counter=start_counter))
-                    write("            {t} e{v} = a{v} + relativeStartY * d{v}_{end_counter};".format(t=t, v=v, end_counter=end_counter))
-                else:
-                    write("            {se}{v} = b{v} + relativeStartY * d{v}_bc;".format(v=v, se=("e" if toRight else "s")))
-            write("            for (; y < yend; ++y) {")
-            for (t, v, _) in pv:
-                if v == "y" or v == "x":
-                    continue
-                write("                {t} {v} = s{v};".format(t=t, v=v))
-                write("                final {t} d{v} = (s{v} - e{v}) / (sx - ex);".format(t=t, v=v))
-            write("                final int row = y * width;")
-            write("                for (int index = row + (int)Math.max(sx, 0); index < row + (int)Math.min(ex, width - 1); ++index) {")
-            write("                    if (zbuf[index] < z) {")
-            for (t, v, e) in pp:
-                write("                        final {t} {v} = {e};".format(t=t, v=v, e=e))
-            write("                        zbuf[index] = z;")
-            write("                        pixels[index] = color | ALPHA;")
-            write("                        modelbuf[index] = model;")
-            write("                    }")
-            for (t, v, _) in pv:
-                if v == "y" or v == "x":
-                    continue
-                write("                    {v} += d{v};".format(v=v))
-            write("                }")
-            for (t, v, _) in pv:
-                if v == "y":
-                    continue
-                write("                s{v} += d{v}_{start_counter};".format(v=v, start_counter=start_counter))
-                write("                e{v} += d{v}_{end_counter};".format(v=v, end_counter=end_counter))
-            write("            }")
+            if kind == SHADING:
+                write("            if (y < by) {" if top else "            } else {")
+            else:
+                write("            {new}yend = Math.min({}y, clipY1);".format(end, new=("int " if top else "")))
+                write("            for (; y < yend; ++y) {")
+            write_row(kind, smooth, textured, subdivided, mipmapped, tiled, pv, pp, start_counter, end_counter)
+            if kind != SHADING or not top:
+                write("            }")
     write("        }")
+    if kind != SHADING:
+        write("")
+        write("        statistics.fragments.add(fragments);")
+        if kind == FORWARD:
+            write("        statistics.shadedFragments.add(shaded);")
+    write("    }")
+    write("")
+
+for (mode, smooth, textured, subdivided, mipmapped, tiled) in VARIANTS:
+    write_method(FORWARD, mode, smooth, textured, subdivided, mipmapped, tiled)
+write_method(VISIBILITY, "FLAT", False, False, False, False, False)
+for (mode, smooth, textured, subdivided, mipmapped, tiled) in VARIANTS:
+    write_method(SHADING, mode, smooth, textured, subdivided, mipmapped, tiled)
+
+scanline = gen
+gen = ""
+
+# The half-space rasterizer walks the triangle's bounding box in 8x8 blocks,
+# skipping blocks outside an edge and dropping the edge tests for blocks inside
+# all three.  Attributes are planes over the screen evaluated at pixel centers,
+# with gradients set up once per triangle.  Depth is kept within the range of
+# the vertices, as the scanline rasterizer's is (see OcclusionBuffer).
+#
+# It has the same variants as the scanline rasterizer.  Mipmapped methods
+# choose a level for each block from the texture gradients in the middle of
+# the part of it inside the bounding box.  Subdivided methods cut each row of
+# a block into segments on the same grid of screen columns, kept within the
+# bounding box; the texture coordinates at the ends of a segment come from
+# the planes, with depth kept within the range of the vertices.
+
+HALF_SPACE_SETUP = """
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
 
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+"""
+
+CLAMPED_Z = "Math.min(Math.max({}, zmin), zmax)"
+
+def write_half_space_method(mode, smooth, textured, subdivided, mipmapped, tiled):
+
+    pt = [(x[1], x[2], x[3]) for x in PER_TRIANGLE if mode_matches(smooth, textured, x[0])]
+    pv = [(x[1], x[2], x[3]) for x in PER_VERTEX   if mode_matches(smooth, textured, x[0]) and x[2] not in ("x", "y")]
+    pp = [(x[1], x[2], x[3]) for x in PER_PIXEL    if mode_matches(smooth, textured, x[0])]
+    pp = texture_pixel_values(pp, textured, subdivided, mipmapped, tiled)
+
+    write("    private void {}(final int modelId, final Material material,".format(variant_name("halfSpace", mode, subdivided, mipmapped, tiled)))
+    write("            final float[] tri, final int off,")
+    write("            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {")
+    write(HALF_SPACE_SETUP.rstrip("\n"))
+    write("")
+
+    for (t, v, e) in pt:
+        write("        final {} {} = {};".format(t, v, e))
+    if mipmapped:
+        write("        final int[][] levels = texture.{}();".format("getTiledLevels" if tiled else "getLevels"))
+    for (t, v, e) in pv:
+        write("        final {t} {v}0 = {e0}, {v}1 = {e1}, {v}2 = {e2};".format(t=t, v=v, e0=e.replace("vert", "v0"), e1=e.replace("vert", "v1"), e2=e.replace("vert", "v2")))
+        write("        final {t} d{v}dx = (({v}1 - {v}0) * ey2 - ({v}2 - {v}0) * ey1) * invArea;".format(t=t, v=v))
+        write("        final {t} d{v}dy = (({v}2 - {v}0) * ex1 - ({v}1 - {v}0) * ex2) * invArea;".format(t=t, v=v))
+        write("        final {t} {v}00 = {v}0 + (0.5f - fx0) * d{v}dx + (0.5f - fy0) * d{v}dy;".format(t=t, v=v))
+
+    write("        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {")
+    write("            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {")
+    write("                final long e01 = a01 * (long) bx + b01 * (long) by + c01;")
+    write("                final long e12 = a12 * (long) bx + b12 * (long) by + c12;")
+    write("                final long e20 = a20 * (long) bx + b20 * (long) by + c20;")
+    write("                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {")
+    write("                    continue;")
+    write("                }")
+    write("                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;")
+    write("                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);")
+    write("                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);")
+    write("                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);")
+    if mipmapped:
+        write("                final float midX = (xstart + xend - 1) * 0.5f, midY = (ystart + yend - 1) * 0.5f;")
+        write_mip_level("                ", "mipLevel(texture, texu00 + midX * dtexudx + midY * dtexudy,\n"
+                        "                        texv00 + midX * dtexvdx + midY * dtexvdy, " + CLAMPED_Z.format("z00 + midX * dzdx + midY * dzdy") + ",\n"
+                        "                        dtexudx, dtexvdx, dzdx, dtexudy, dtexvdy, dzdy);", tiled)
+    write("                for (int y = ystart; y < yend; ++y) {")
+    write("                    final int row = y * width;")
+    write("                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;")
+    for (t, v, _) in pv:
+        write("                    final {t} {v}y = {v}00 + y * d{v}dy;".format(t=t, v=v))
+    indent = "                    "
+    if subdivided:
+        write("                    for (int x = xstart; x < xend;) {")
+        write("                        final int segment = x & ~(subdivision - 1);")
+        write("                        final int s0 = Math.max(segment, minX), s1 = Math.min(segment + subdivision, maxX + 1);")
+        write("                        final float recip0 = 1 / {}, recip1 = 1 / {};".format(CLAMPED_Z.format("zy + s0 * dzdx"), CLAMPED_Z.format("zy + s1 * dzdx")))
+        if mipmapped:
+            write("                        final float texX0 = (texuy + s0 * dtexudx) * recip0 * texWidth;")
+            write("                        final float texY0 = (texvy + s0 * dtexvdx) * recip0 * texHeight;")
+            write("                        final float dtexX = ((texuy + s1 * dtexudx) * recip1 * texWidth - texX0) / (s1 - s0);")
+            write("                        final float dtexY = ((texvy + s1 * dtexvdx) * recip1 * texHeight - texY0) / (s1 - s0);")
+        else:
+            write("                        final float texX0 = Util.clamp((texuy + s0 * dtexudx) * recip0, 0f, 1f) * texXMax;")
+            write("                        final float texY0 = Util.clamp((texvy + s0 * dtexvdx) * recip0, 0f, 1f) * texYMax;")
+            write("                        final float dtexX = (Util.clamp((texuy + s1 * dtexudx) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);")
+            write("                        final float dtexY = (Util.clamp((texvy + s1 * dtexvdx) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);")
+        write("                        for (final int stop = Math.min(s1, xend); x < stop; ++x) {")
+        indent = "                        "
+    else:
+        write("                    for (int x = xstart; x < xend; ++x) {")
+    write(indent + "    if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {")
+    write(indent + "        continue;")
+    write(indent + "    }")
+    write(indent + "    ++fragments;")
+    write(indent + "    final int index = row + x;")
+    write(indent + "    final float z = {};".format(CLAMPED_Z.format("zy + x * dzdx")))
+    write(indent + "    if (zbuf[index] < z) {")
+    inner = indent + "        "
+    for (t, v, _) in pv:
+        if v == "z" or (subdivided and v in ("texu", "texv")):
+            continue
+        write(inner + "final {t} {v} = {v}y + x * d{v}dx;".format(t=t, v=v))
+    for (t, v, e) in pp:
+        write(inner + "final {t} {v} = {e};".format(t=t, v=v, e=e))
+    write(inner + "zbuf[index] = z;")
+    write(inner + "pixels[index] = color | ALPHA;")
+    write(inner + "if (idbuf != null) {")
+    write(inner + "    idbuf[index] = modelId;")
+    write(inner + "}")
+    write(inner + "++shaded;")
+    write(indent + "    }")
+    write(indent + "}")
+    if subdivided:
+        write("                    }")
+    write("                }")
+    write("            }")
     write("        }")
-    write("        break;")
+    write("")
+    write("        statistics.fragments.add(fragments);")
+    write("        statistics.shadedFragments.add(shaded);")
+    write("    }")
+    write("")
 
-write("        }")
+write_dispatch("halfSpace", "(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);")
+half_space_dispatch = gen
+gen = ""
+
+for (mode, smooth, textured, subdivided, mipmapped, tiled) in VARIANTS:
+    write_half_space_method(mode, smooth, textured, subdivided, mipmapped, tiled)
+half_space = gen
+gen = ""
 
-print(sys.stdin.read().replace("/* {AUTOGENERATED CODE HERE} */", gen))
+print(sys.stdin.read()
+      .replace("/* {AUTOGENERATED CODE HERE} */", dispatch)
+      .replace("/* {AUTOGENERATED METHODS HERE} */", scanline)
+      .replace("/* {AUTOGENERATED SHADING CODE HERE} */", shading_dispatch)
+      .replace("/* {AUTOGENERATED HALF-SPACE CODE HERE} */", half_space_dispatch)
+      .replace("/* {AUTOGENERATED HALF-SPACE METHODS HERE} */", half_space))
@@ -28,6 +28,23 @@ public final class Camera {
         lookAtVector = new Vector(lookX, lookY, lookZ);
     }
 
+    /**
+     * Copy a camera as it stands, matrix included, so that the copy can be
+     * rendered from on another thread while the original moves on.
+     */
+    Camera(Camera other) {
+        final Matrix matrix = other.getMatrix();
+        posX = other.posX;
+        posY = other.posY;
+        posZ = other.posZ;
+        lookAtVector = new Vector(other.lookAtVector.x, other.lookAtVector.y, other.lookAtVector.z);
+        forward.set(other.forward.x, other.forward.y, other.forward.z);
+        up.set(other.up.x, other.up.y, other.up.z);
+        right.set(other.right.x, other.right.y, other.right.z);
+        transform.set(matrix);
+        rebuildFlag = false;
+    }
+
     public void setPos(float x, float y, float z) {
         posX = x;
         posY = y;
@@ -0,0 +1,180 @@
+package sj3d;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Renders a frame by splitting the scene, rather than the screen, across
+ * threads.  This balances better than screen tiles when a few big models
+ * cover most of the screen.
+ *
+ * <p>The triangles of all models, followed by those of the instances of all
+ * batches, are numbered in order and cut into one contiguous run per thread,
+ * so a single big model may be shared by several threads.  Instances are not
+ * split; each goes to the thread whose run holds its first triangle.  Each
+ * thread draws its run with its own {@link Renderer} into its own buffers;
+ * the first thread draws straight into the world's buffers.
+ * The buffers are then merged into the world's buffers by comparing depths,
+ * in parallel by rows.
+ *
+ * <p>When two threads draw the same depth at a pixel, the earlier thread
+ * wins.  That is the same tie-break the depth test uses when triangles are
+ * drawn one after the other, so the result is identical to single-threaded
+ * rendering.
+ */
+final class DepthCompositor {
+
+    private static final int BAND_HEIGHT = 16;
+
+    private final int width, height;
+    private final int threads;
+
+    // Destination buffers (shared with renderers[0])
+    private int[] pixels;
+    private final float[] zbuf;
+    private final int[] idbuf;
+
+    // One renderer per thread; entry 0 is unused in the buffer arrays
+    private final Renderer[] renderers;
+    private final int[][] threadPixels;
+    private final float[][] threadZbuf;
+    private final int[][] threadIdbuf;
+
+    DepthCompositor(final Renderer renderer, final int width, final int height,
+            final int[] pixels, final float[] zbuf, final int[] idbuf,
+            final RenderSettings settings) {
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+        this.zbuf = zbuf;
+        this.idbuf = idbuf;
+
+        threads = settings.threads;
+        renderers = new Renderer[threads];
+        threadPixels = new int[threads][];
+        threadZbuf = new float[threads][];
+        threadIdbuf = new int[threads][];
+        renderers[0] = renderer;
+        for (int i = 1; i < threads; ++i) {
+            threadPixels[i] = new int[pixels.length];
+            threadZbuf[i] = new float[zbuf.length];
+            threadIdbuf[i] = idbuf == null ? null : new int[idbuf.length];
+            renderers[i] = new Renderer(width, height, threadPixels[i],
+                    threadZbuf[i], threadIdbuf[i], settings, renderer.statistics);
+        }
+    }
+
+    /**
+     * Composite into other pixels from now on.  The first renderer belongs to
+     * the world and is expected to be pointed at them by it.
+     *
+     * @see Renderer#setPixels(int[])
+     */
+    void setPixels(final int[] pixels) {
+        this.pixels = pixels;
+    }
+
+    /**
+     * Set the lighting of the extra renderers.  The first renderer belongs to
+     * the world and is expected to be updated by it.
+     *
+     * @see Renderer#setLighting(float, float, float, float, float)
+     */
+    void setLighting(final float x, final float y, final float z,
+                     final float intensity, final float ambient) {
+        for (int i = 1; i < threads; ++i) {
+            renderers[i].setLighting(x, y, z, intensity, ambient);
+        }
+    }
+
+    /**
+     * Render the visible models of a scene, then its batches, into the
+     * world's buffers, which must have been cleared already.
+     *
+     * @param scene   the scene
+     * @param visible the indices of the models to render, in order; each is
+     *                marked with its position in this array plus one as its
+     *                ID
+     * @param count   the number of models to render
+     * @param clipped whether each model crosses the edge of the view (see
+     *                {@link Renderer#testFrustum(Camera, SceneSnapshot, int)})
+     * @param pool    the pool to run on
+     */
+    void render(final SceneSnapshot scene, final int[] visible, final int count,
+            final boolean[] clipped, final ForkJoinPool pool) {
+
+        long total = 0;
+        for (int i = 0; i < count; ++i) {
+            total += scene.models[visible[i]].numTriangles();
+        }
+        for (InstanceBatch batch : scene.batches) {
+            total += (long) batch.size() * batch.mesh.numTriangles;
+        }
+
+        final long triangles = total;
+        Parallel.forEach(pool, threads,
+                i -> renderShare(i, scene, visible, count, clipped, triangles));
+        Parallel.forEach(pool, (height + BAND_HEIGHT - 1) / BAND_HEIGHT,
+                this::composite);
+        for (int i = 1; i < threads; ++i) {
+            renderers[0].markDirty(renderers[i]);
+        }
+    }
+
+    private void renderShare(final int thread, final SceneSnapshot scene,
+            final int[] visible, final int count, final boolean[] clipped,
+            final long triangles) {
+        if (thread > 0) {
+            renderers[thread].clearDepth(null);
+        }
+
+        final long first = triangles * thread / threads;
+        final long end = triangles * (thread + 1) / threads;
+        long base = 0;
+        for (int i = 0; i < count && base < end; ++i) {
+            final int triangleCount = scene.models[visible[i]].numTriangles();
+            final long lo = Math.max(first - base, 0);
+            final long hi = Math.min(end - base, triangleCount);
+            if (lo < hi) {
+                renderers[thread].render(scene.camera, scene, visible[i], i + 1,
+                        (int) lo, (int) hi, clipped[i], null);
+            }
+            base += triangleCount;
+        }
+        for (int i = 0; i < scene.batches.length && base < end; ++i) {
+            final InstanceBatch batch = scene.batches[i];
+            final long triangleCount = batch.mesh.numTriangles;
+            if (triangleCount > 0) {
+                // The instances whose first triangle is in this thread's run
+                final long lo = Math.max(first - base + triangleCount - 1, 0)
+                        / triangleCount;
+                final long hi = Math.min((end - base + triangleCount - 1)
+                        / triangleCount, batch.size());
+                if (lo < hi) {
+                    renderers[thread].render(scene.camera, batch, 0,
+                            (int) lo, (int) hi, null);
+                }
+            }
+            base += batch.size() * triangleCount;
+        }
+    }
+
+    private void composite(final int band) {
+        final int start = band * BAND_HEIGHT * width;
+        final int end = Math.min((band + 1) * BAND_HEIGHT, height) * width;
+        for (int t = 1; t < threads; ++t) {
+            final int[] p = threadPixels[t];
+            final float[] z = threadZbuf[t];
+            final int[] ids = threadIdbuf[t];
+            for (int i = start; i < end; ++i) {
+                if (zbuf[i] < z[i]) {
+                    zbuf[i] = z[i];
+                    pixels[i] = p[i];
+                    if (ids != null) {
+                        idbuf[i] = ids[i];
+                    }
+                }
+            }
+        }
+    }
+
+}
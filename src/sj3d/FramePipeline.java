@@ -0,0 +1,167 @@
+package sj3d;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Renders consecutive frames overlapping each other (see
+ * {@link RenderSettings#setPipelining(boolean)}).
+ *
+ * <p>Each frame goes through two stages.  Setting up culls the models of a
+ * {@link SceneSnapshot} and sets up their triangles into a
+ * {@link TileBinner}, on one thread of the pool.  Drawing clears the
+ * buffers, rasterizes the bins and resolves the result, spread across the
+ * pool.  Each stage has its own renderer, and there are two sets of bins,
+ * used by alternate frames, so that one frame can be set up while the one
+ * before it is drawn.  Frames go through each stage one after another.
+ *
+ * <p>A drawn frame is only copied into the final pixels when the caller
+ * waits for it, so the caller always sees a whole frame, even while the
+ * next one is being drawn.  The caller says where the final pixels are each
+ * time, so they can be the next image of a swap chain.
+ */
+final class FramePipeline {
+
+    private final Renderer front; // sets up frames
+    private final Renderer back; // draws frames
+    private final RenderStatistics frontStatistics, backStatistics;
+    private final TileBinner[] bins = new TileBinner[2];
+    private final RenderStatistics[] setUpStatistics = new RenderStatistics[2]; // of the frame in each bins
+
+    private final int[] pixels; // what frames are drawn into
+    private final int[] resolved; // what the pixels are resolved into, or null if they need no resolving
+    private final Resolver resolver;
+    private final int background;
+    private final boolean deferred;
+    private final ForkJoinPool pool;
+
+    // The light for frames started from now on; replaced, never changed
+    private float[] light = { 0, 1, 0, 1, 0 };
+
+    // The last frame to be set up and drawn, and how many frames there have
+    // been
+    private CompletableFuture<Void> setUp = CompletableFuture.completedFuture(null);
+    private CompletableFuture<Void> drawn = setUp;
+    private int frames;
+
+    // Whether the last frame drawn is still to be copied to finalPixels, and
+    // the counts of setting it up
+    private boolean pending;
+    private RenderStatistics pendingStatistics;
+
+    FramePipeline(final int width, final int height, final int[] pixels, final float[] zbuf,
+            final int finalSize, final Resolver resolver, final RenderSettings settings,
+            final ForkJoinPool pool) {
+        this.pixels = pixels;
+        this.resolver = resolver;
+        this.pool = pool;
+        resolved = resolver == null ? null : new int[finalSize];
+        background = settings.bgcolor | settings.mblur;
+        deferred = settings.deferredShading;
+
+        frontStatistics = new RenderStatistics(pixels.length);
+        backStatistics = new RenderStatistics(pixels.length);
+        front = new Renderer(width, height, pixels, zbuf, null, settings, frontStatistics);
+        back = new Renderer(width, height, pixels, zbuf, null, settings, backStatistics);
+        for (int i = 0; i < 2; ++i) {
+            bins[i] = new TileBinner(width, height);
+            setUpStatistics[i] = new RenderStatistics(pixels.length);
+        }
+    }
+
+    /**
+     * Set the lighting of the frames started from now on.
+     *
+     * @see Renderer#setLighting(float, float, float, float, float)
+     */
+    void setLighting(final float x, final float y, final float z,
+                     final float intensity, final float ambient) {
+        light = new float[] { x, y, z, intensity, ambient };
+    }
+
+    /**
+     * Start a frame, then wait for the one before it to be drawn and copy it
+     * into the final pixels.
+     *
+     * @param scene       the scene to render
+     * @param statistics  overwritten with the counts of the frame before
+     * @param finalPixels the final pixels
+     * @return false if there was no frame before to copy
+     */
+    boolean render(final SceneSnapshot scene, final RenderStatistics statistics, final int[] finalPixels) {
+        final int slot = frames++ & 1;
+        final TileBinner frameBins = bins[slot];
+        final RenderStatistics frameStatistics = setUpStatistics[slot];
+        final float[] frameLight = light;
+
+        // The bins were last used by the frame before the one before, which
+        // was drawn by the time the previous call returned
+        final CompletableFuture<Void> ready = setUp.thenRunAsync(
+                () -> setUp(scene, frameLight, frameBins, frameStatistics), pool);
+        setUp = ready;
+        final boolean flushed = flush(statistics, finalPixels);
+        drawn = ready.thenRunAsync(() -> draw(frameLight, frameBins), pool);
+        pending = true;
+        pendingStatistics = frameStatistics;
+        return flushed;
+    }
+
+    /**
+     * Wait for the last frame started to be drawn, and copy it into the final
+     * pixels if it has not been already.
+     *
+     * @param statistics  overwritten with the counts of that frame
+     * @param finalPixels the final pixels
+     * @return false if the frame was already copied
+     */
+    boolean flush(final RenderStatistics statistics, final int[] finalPixels) {
+        if (!pending) {
+            return false;
+        }
+        drawn.join();
+        System.arraycopy(resolved != null ? resolved : pixels, 0, finalPixels, 0, finalPixels.length);
+        statistics.reset();
+        statistics.add(pendingStatistics);
+        statistics.add(backStatistics);
+        pending = false;
+        return true;
+    }
+
+    private void setUp(final SceneSnapshot scene, final float[] light, final TileBinner bins,
+            final RenderStatistics statistics) {
+        front.setLighting(light[0], light[1], light[2], light[3], light[4]);
+        bins.clear();
+        int visible = 0;
+        for (int i = 0; i < scene.models.length; ++i) {
+            final int result = front.testFrustum(scene.camera, scene, i);
+            if (result != Renderer.OUTSIDE) {
+                front.render(scene.camera, scene, i, 0, 0, scene.models[i].numTriangles(),
+                        result == Renderer.CLIPPED, bins);
+                ++visible;
+            }
+        }
+        for (InstanceBatch batch : scene.batches) {
+            front.render(scene.camera, batch, 0, 0, batch.size(), bins);
+        }
+        frontStatistics.models = visible;
+        frontStatistics.culledModels = scene.models.length - visible;
+        statistics.reset();
+        statistics.add(frontStatistics);
+        frontStatistics.reset();
+    }
+
+    private void draw(final float[] light, final TileBinner bins) {
+        back.setLighting(light[0], light[1], light[2], light[3], light[4]);
+        backStatistics.reset();
+        back.clear(background, pool);
+        if (deferred) {
+            bins.renderDeferred(back, pool);
+        } else {
+            bins.render(back, pool);
+        }
+        if (resolver != null) {
+            resolver.resolve(pixels, resolved, pool);
+        }
+    }
+
+}
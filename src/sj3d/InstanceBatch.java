@@ -0,0 +1,245 @@
+package sj3d;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Many copies of one model's geometry, each with its own transformation and
+ * color, drawn together.  Unlike copying a model with
+ * {@link Model#Model(Model)}, an instance costs no objects of its own: the
+ * transformations are packed into one <code>float[]</code>, each color is
+ * one entry of an array, and the renderer draws the whole batch in one call,
+ * testing each instance against the view as it goes.
+ *
+ * <p>Each transformation is the top three rows of a 4x4 matrix, row by row,
+ * taking {@link #TRANSFORM_STRIDE} floats; see {@link #getTransforms()}.
+ *
+ * <p>The instances share the blueprint's material, except for its color:
+ * each distinct color gets its own copy of the material, made when the color
+ * is first used.  Those copies do not follow later changes to the blueprint's
+ * material.
+ *
+ * <p>A frame renders the batch as it stood when the frame started, without
+ * copying it: the arrays of transformations and colors are shared with the
+ * frame, and only copied when the batch is next changed.  A batch that does
+ * not change costs nothing per frame, and one that changes every frame costs
+ * one copy of the arrays.
+ *
+ * <p>Instances are not pickable: {@link World#getModelAtPoint(int, int)}
+ * returns <code>null</code> where they are drawn.
+ *
+ * @see World#addBatch(InstanceBatch)
+ */
+public final class InstanceBatch {
+
+    /**
+     * Number of floats in each instance's transformation
+     */
+    public static final int TRANSFORM_STRIDE = 12;
+
+    final Mesh mesh;
+    private final Material material;
+    private int currentFrame;
+
+    private float[] transforms;
+    private Material[] materials; // the material of each instance
+    private int size;
+
+    // Whether a snapshot shares the arrays above, so they must be copied
+    // before they are next changed
+    private boolean shared;
+
+    // The copy of the material for each color used so far, and scratch
+    // space for setTransform; null in snapshots, which are never changed
+    private final HashMap<Integer, Material> colorMaterials;
+    private final Matrix tmpMatrix;
+
+    /**
+     * Create an empty batch of instances of a model's geometry, drawn in the
+     * model's current frame.
+     *
+     * @param blueprint
+     *            the model whose geometry and material to use
+     */
+    public InstanceBatch(Model blueprint) {
+        mesh = blueprint.mesh;
+        material = blueprint.material;
+        currentFrame = blueprint.getFrame();
+        transforms = new float[TRANSFORM_STRIDE * 16];
+        materials = new Material[16];
+        colorMaterials = new HashMap<>();
+        tmpMatrix = new Matrix();
+    }
+
+    /**
+     * Take a snapshot of a batch as it stands, for a snapshot of the scene.
+     * The snapshot shares the arrays of the batch until the batch is next
+     * changed, and must not be changed itself.
+     */
+    InstanceBatch(InstanceBatch other) {
+        mesh = other.mesh;
+        material = other.material;
+        currentFrame = other.currentFrame;
+        size = other.size;
+        transforms = other.transforms;
+        materials = other.materials;
+        other.shared = true;
+        colorMaterials = null;
+        tmpMatrix = null;
+    }
+
+    /**
+     * Add an instance, with the same rotation and position as
+     * {@link Model#setRotation(float, float, float)} and
+     * {@link Model#setPos(float, float, float)} would give a model, scaled
+     * by the same amount along each axis.
+     *
+     * @return the index of the new instance
+     */
+    public int addInstance(float x, float y, float z, float rx, float ry, float rz,
+            float scale, int color) {
+        if (size == materials.length) {
+            transforms = Arrays.copyOf(transforms, transforms.length * 2);
+            materials = Arrays.copyOf(materials, materials.length * 2);
+            shared = false;
+        }
+        final int i = size++;
+        setTransform(i, x, y, z, rx, ry, rz, scale);
+        setColor(i, color);
+        return i;
+    }
+
+    /**
+     * Move, rotate and scale an instance, as
+     * {@link #addInstance(float, float, float, float, float, float, float, int)}
+     * does.
+     *
+     * @param index the instance index
+     */
+    public void setTransform(int index, float x, float y, float z, float rx, float ry, float rz,
+            float scale) {
+        checkIndex(index);
+        unshare();
+        final Matrix m = tmpMatrix;
+        m.setToRotationMatrix(rx, ry, rz);
+        m.multiplySelfByScaleMatrix(scale, scale, scale);
+        m.data[0][3] = x;
+        m.data[1][3] = y;
+        m.data[2][3] = z;
+        for (int row = 0; row < 3; ++row) {
+            System.arraycopy(m.data[row], 0, transforms, index * TRANSFORM_STRIDE + row * 4, 4);
+        }
+    }
+
+    /**
+     * Set the color of an instance.  Textured materials ignore it.
+     *
+     * @param index the instance index
+     */
+    public void setColor(int index, int color) {
+        checkIndex(index);
+        Material m = colorMaterials.get(color);
+        if (m == null) {
+            m = new Material();
+            m.mode = material.mode;
+            m.diffuseValue = material.diffuseValue;
+            m.ambientValue = material.ambientValue;
+            m.texture = material.texture;
+            m.color = color;
+            colorMaterials.put(color, m);
+        }
+        unshare();
+        materials[index] = m;
+    }
+
+    public int getColor(int index) {
+        checkIndex(index);
+        return materials[index].color;
+    }
+
+    /**
+     * Get the packed transformations, to change many instances at once
+     * without the overhead of {@link #setTransform}.  Instance <i>i</i>'s
+     * matrix starts at <code>i * TRANSFORM_STRIDE</code> and holds
+     * <code>m00, m01, m02, m03, m10, ... m23</code>, where column 3 is the
+     * position.
+     *
+     * <p>The array is replaced as instances are added, and when it is
+     * changed after a frame has started rendering the batch (see
+     * {@link World#render()}), so get it again after adding instances and
+     * after each frame.
+     *
+     * @return the transformations of all instances, and possibly unused space
+     *         after them
+     */
+    public float[] getTransforms() {
+        unshare();
+        return transforms;
+    }
+
+    /**
+     * Get the number of instances.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all instances.
+     */
+    public void clear() {
+        if (shared) {
+            transforms = new float[transforms.length];
+            materials = new Material[materials.length];
+            shared = false;
+        } else {
+            Arrays.fill(materials, 0, size, null);
+        }
+        size = 0;
+    }
+
+    public int getFrame() {
+        return currentFrame;
+    }
+
+    public void setFrame(int i) {
+        currentFrame = i % mesh.frames.size();
+    }
+
+    /**
+     * Get the packed vertex data of the current frame.
+     *
+     * @return the current frame, or <code>null</code> if there are no frames
+     */
+    Mesh.Frame frameData() {
+        return mesh.frames.isEmpty() ? null : mesh.frames.get(currentFrame);
+    }
+
+    Material material(final int index) {
+        return materials[index];
+    }
+
+    /**
+     * Get the packed transformations to render, without the copying
+     * {@link #getTransforms()} may do.
+     */
+    float[] transforms() {
+        return transforms;
+    }
+
+    // Copy the arrays if a snapshot shares them, before changing them
+    private void unshare() {
+        if (shared) {
+            transforms = transforms.clone();
+            materials = materials.clone();
+            shared = false;
+        }
+    }
+
+    private void checkIndex(final int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("instance " + index + " (size is " + size + ")");
+        }
+    }
+
+}
@@ -1,5 +1,7 @@
 package sj3d;
 
+import java.util.Arrays;
+
 public final class Material {
 
     // Constants
@@ -9,6 +11,11 @@ public final class Material {
     public static final int TEXTURED = 2;
     public static final int SMOOTH_TEXTURED = SMOOTH | TEXTURED;
 
+    /**
+     * Number of light levels in a material's table of shades
+     */
+    static final int SHADE_LEVELS = 256;
+
     // Member variables
 
     /**
@@ -24,6 +31,81 @@ public final class Material {
     public Texture texture;
     public int color = 0xaaaaaa;
 
+    // The color's shades under the last few lights it was drawn with, most
+    // recent first, so that worlds lit differently can share the material
+    private static final int SHADES_CACHED = 4;
+    private volatile Shades[] shades = new Shades[0];
+
+    /**
+     * The shades of a color from black up to the brightest light a material
+     * can get.
+     */
+    static final class Shades {
+
+        final int color;
+        final float maxLight;
+
+        /**
+         * The color scaled by {@link #SHADE_LEVELS} evenly spaced light levels
+         * from 0 to maxLight
+         */
+        final int[] table = new int[SHADE_LEVELS];
+
+        /**
+         * Scale from a light amount to a table index (before rounding)
+         */
+        final float scale;
+
+        Shades(final int color, final float maxLight) {
+            this.color = color;
+            this.maxLight = maxLight;
+            scale = maxLight > 0 ? (SHADE_LEVELS - 1) / maxLight : 0;
+            final int red = (color >> 16) & 0xff, green = (color >> 8) & 0xff, blue = color & 0xff;
+            for (int i = 0; i < SHADE_LEVELS; ++i) {
+                final float light = i * maxLight / (SHADE_LEVELS - 1);
+                table[i] = (int) (blue * light) | (((int) (green * light)) << 8) | (((int) (red * light)) << 16);
+            }
+        }
+
+    }
+
+    /**
+     * Get the shades of the color under a light. Light amounts range from the
+     * ambient to the full diffuse light, so the table covers up to the greater
+     * of the two. Tables for the last few lights are kept, so a table is only
+     * built the first time the color is drawn under a light, even when
+     * several worlds with different lights draw the material in turn.
+     *
+     * @param intensity
+     *            the intensity of the light
+     * @param ambient
+     *            the ambient intensity
+     */
+    Shades getShades(final float intensity, final float ambient) {
+        final float maxLight = Math.max(intensity * diffuseValue, ambient * ambientValue);
+        final int color = this.color;
+        final Shades[] cached = shades;
+        for (Shades s : cached) {
+            if (s.color == color && s.maxLight == maxLight) {
+                return s;
+            }
+        }
+
+        // Threads racing here may each drop the other's table, which only
+        // costs building it again
+        final Shades result = new Shades(color, maxLight);
+        final Shades[] updated = new Shades[Math.min(cached.length + 1, SHADES_CACHED)];
+        updated[0] = result;
+        int count = 1;
+        for (int i = 0; i < cached.length && count < updated.length; ++i) {
+            if (cached[i].color == color) {
+                updated[count++] = cached[i];
+            }
+        }
+        shades = count == updated.length ? updated : Arrays.copyOf(updated, count);
+        return result;
+    }
+
     // Simple constructors
 
     public static Material flat(int color) {
@@ -85,6 +85,18 @@ final class Matrix {
         data[3][3] = 1;
     }
 
+    /**
+     * Copy the given matrix into this matrix.
+     *
+     * @param m
+     *            the matrix to copy
+     */
+    public void set(Matrix m) {
+        for (int i = 0; i < 4; ++i) {
+            System.arraycopy(m.data[i], 0, data[i], 0, 4);
+        }
+    }
+
     public void resetToIdentity() {
         for (int i = 0; i < 4; ++i) {
             Util.fill(data[i], 0.0f);
@@ -0,0 +1,227 @@
+package sj3d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Packed storage for the geometry of a {@link Model}.  A mesh is shared by a
+ * model and every model copied from it.
+ *
+ * <p>Everything is kept in primitive arrays so that the renderer can walk
+ * it without chasing pointers:
+ * <ul>
+ *   <li>each frame holds the x, y, z of every vertex, and optionally the x,
+ *       y, z of every vertex normal</li>
+ *   <li>{@link #indices} holds the three vertex indices of every
+ *       triangle</li>
+ *   <li>{@link #uvs} holds the u, v of each corner of every triangle, or
+ *       <code>NaN</code> if the triangle has no texture coordinates</li>
+ * </ul>
+ */
+final class Mesh {
+
+    static final class Frame {
+
+        float[] positions = new float[3 * 16];
+        float[] normals; // null until the first normal is set, then as long as positions; 0, 0, 0 for none
+        int numVertices;
+        float[] faceNormals = new float[0];
+        volatile int numFaceNormals; // written after faceNormals
+
+        // Views handed out since the last frame started, so that normals
+        // assigned to their deprecated n reach the frame; guarded by this
+        private Vertex[] views;
+
+        // Bounding box and bounding sphere of the vertices
+        float minX, minY, minZ, maxX, maxY, maxZ;
+        float centerX, centerY, centerZ, radius;
+
+        int addVertex(final float x, final float y, final float z) {
+            if (positions.length < (numVertices + 1) * 3) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+                if (normals != null) {
+                    normals = Arrays.copyOf(normals, positions.length);
+                }
+            }
+            final int i = numVertices++;
+            positions[i * 3] = x;
+            positions[i * 3 + 1] = y;
+            positions[i * 3 + 2] = z;
+            growBounds(x, y, z, i == 0);
+            return i;
+        }
+
+        private void growBounds(final float x, final float y, final float z, final boolean first) {
+            if (first) {
+                minX = maxX = centerX = x;
+                minY = maxY = centerY = y;
+                minZ = maxZ = centerZ = z;
+                radius = 0;
+                return;
+            }
+
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+
+            // Grow the sphere just enough to reach the new point (Ritter)
+            final float dx = x - centerX, dy = y - centerY, dz = z - centerZ;
+            final float d = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            if (d > radius) {
+                final float r = (radius + d) / 2;
+                final float k = (r - radius) / d;
+                centerX += dx * k;
+                centerY += dy * k;
+                centerZ += dz * k;
+                radius = r;
+            }
+        }
+
+        void setNormal(final int index, final float x, final float y, final float z) {
+            if (normals == null) {
+                if (x == 0 && y == 0 && z == 0) {
+                    return;
+                }
+                normals = new float[positions.length];
+            }
+            normals[index * 3] = x;
+            normals[index * 3 + 1] = y;
+            normals[index * 3 + 2] = z;
+        }
+
+        /**
+         * Get a vertex normal.
+         *
+         * @return a new vector, or <code>null</code> if the vertex has none
+         */
+        Vector normal(final int index) {
+            final float[] n = normals;
+            final int i = index * 3;
+            if (n == null || (n[i] == 0 && n[i + 1] == 0 && n[i + 2] == 0)) {
+                return null;
+            }
+            return new Vector(n[i], n[i + 1], n[i + 2]);
+        }
+
+        /**
+         * Get a view of a vertex, and remember it until the next frame
+         * starts (see {@link #syncViews()}).  A vertex has one view at a
+         * time, so that old code holding on to it sees the same object.
+         */
+        synchronized Vertex view(final int index) {
+            final int capacity = positions.length / 3;
+            if (views == null) {
+                views = new Vertex[capacity];
+            } else if (views.length < capacity) {
+                views = Arrays.copyOf(views, capacity);
+            }
+            Vertex v = views[index];
+            if (v == null) {
+                v = views[index] = new Vertex(this, index);
+            }
+            return v;
+        }
+
+        /**
+         * Write back normals assigned to the deprecated
+         * {@link Vertex#n} of views handed out since the last call, then
+         * forget the views.  Called as each frame starts, so this only
+         * costs a lock for models whose vertices are not looked at.
+         */
+        synchronized void syncViews() {
+            if (views != null) {
+                for (Vertex v : views) {
+                    if (v != null) {
+                        v.sync();
+                    }
+                }
+                views = null;
+            }
+        }
+
+        /**
+         * Get the object-space normals of the triangles of a mesh in this
+         * frame, computing any that are not known yet.  Vertices never move
+         * once added, so each normal is only computed once, and once they are
+         * all known, renderers sharing the mesh read them without locking.
+         *
+         * @param mesh the mesh this frame belongs to
+         * @return the x, y, z of the normal of each triangle
+         */
+        float[] faceNormals(final Mesh mesh) {
+            return numFaceNormals < mesh.numTriangles ? computeFaceNormals(mesh) : faceNormals;
+        }
+
+        private synchronized float[] computeFaceNormals(final Mesh mesh) {
+            final int count = mesh.numTriangles;
+            if (numFaceNormals < count) {
+                if (faceNormals.length < count * 3) {
+                    faceNormals = Arrays.copyOf(faceNormals, count * 3);
+                }
+                final Vector n = new Vector();
+                final float[] p = positions;
+                final int[] indices = mesh.indices;
+                for (int i = numFaceNormals; i < count; i++) {
+                    final int a = indices[i * 3] * 3;
+                    final int b = indices[i * 3 + 1] * 3;
+                    final int c = indices[i * 3 + 2] * 3;
+                    n.setToCrossProduct(
+                            p[a] - p[b], p[a + 1] - p[b + 1], p[a + 2] - p[b + 2],
+                            p[a] - p[c], p[a + 1] - p[c + 1], p[a + 2] - p[c + 2]);
+                    n.normalize();
+                    faceNormals[i * 3] = n.x;
+                    faceNormals[i * 3 + 1] = n.y;
+                    faceNormals[i * 3 + 2] = n.z;
+                }
+                numFaceNormals = count;
+            }
+            return faceNormals;
+        }
+
+        void trim() {
+            positions = Arrays.copyOf(positions, numVertices * 3);
+            if (normals != null) {
+                normals = Arrays.copyOf(normals, numVertices * 3);
+            }
+        }
+
+    }
+
+    final ArrayList<Frame> frames = new ArrayList<Frame>();
+    int[] indices = new int[3 * 16];
+    float[] uvs = new float[6 * 16];
+    int numTriangles;
+
+    int addTriangle(final int a, final int b, final int c,
+            final float ua, final float va, final float ub, final float vb,
+            final float uc, final float vc) {
+        if (indices.length < (numTriangles + 1) * 3) {
+            indices = Arrays.copyOf(indices, indices.length * 2);
+            uvs = Arrays.copyOf(uvs, uvs.length * 2);
+        }
+        final int i = numTriangles++;
+        indices[i * 3] = a;
+        indices[i * 3 + 1] = b;
+        indices[i * 3 + 2] = c;
+        uvs[i * 6] = ua;
+        uvs[i * 6 + 1] = va;
+        uvs[i * 6 + 2] = ub;
+        uvs[i * 6 + 3] = vb;
+        uvs[i * 6 + 4] = uc;
+        uvs[i * 6 + 5] = vc;
+        return i;
+    }
+
+    void trim() {
+        indices = Arrays.copyOf(indices, numTriangles * 3);
+        uvs = Arrays.copyOf(uvs, numTriangles * 6);
+        for (Frame frame : frames) {
+            frame.trim();
+        }
+        frames.trimToSize();
+    }
+
+}
@@ -1,70 +1,266 @@
 package sj3d;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
+/**
+ * A renderable triangle mesh with a material and a transformation.
+ *
+ * <p>Geometry is stored packed in primitive arrays (see {@link Mesh}).  The
+ * {@link Vertex} and {@link Triangle} objects returned by
+ * {@link #getVertex(int)} and {@link #getTriangle(int)} are views of it.
+ * Setting a vertex view's normal changes the model; triangles cannot be
+ * changed once added.
+ *
+ * <p>Rendering only reads a model, so a model, and models sharing its
+ * geometry, may be rendered by several worlds at once, for example to draw
+ * more than one view of a scene on different threads.  A model may be moved,
+ * rotated and scaled, and have its frame or material switched, from any
+ * thread, even while it is being rendered; each frame draws it as it stood
+ * when the frame started.  Changing its geometry, or changing a material
+ * after assigning it to a model, while the model is being rendered is not
+ * supported.
+ */
 public class Model extends Object3D {
 
-    protected final ArrayList<ArrayList<Vertex>> frames;
-    protected final ArrayList<Triangle> triangles;
-    protected int currentFrame;
+    final Mesh mesh;
+    protected volatile int currentFrame;
     protected int numFrames;
-    public Material material = new Material();
+
+    /**
+     * The material to draw the model with.  The field is volatile, so a
+     * material set up and then assigned here on one thread is seen whole by
+     * frames started afterwards on any other.
+     */
+    public volatile Material material = new Material();
 
     public Model() {
-        triangles = new ArrayList<Triangle>();
-        frames = new ArrayList<ArrayList<Vertex>>();
+        mesh = new Mesh();
         currentFrame = 0;
         numFrames = 0;
     }
 
     public Model(int numFrames) {
-        triangles = new ArrayList<Triangle>();
-        frames = new ArrayList<ArrayList<Vertex>>(numFrames);
+        mesh = new Mesh();
         for (int i = 0; i < numFrames; i++) {
-            frames.add(i, new ArrayList<Vertex>());
+            mesh.frames.add(new Mesh.Frame());
         }
         this.numFrames = numFrames;
         currentFrame = 0;
     }
 
+    /**
+     * Create a model that shares the geometry of another model.  The new
+     * model has its own transformation and current frame.
+     *
+     * @param blueprint the model whose geometry to share
+     */
     public Model(Model blueprint) {
-        frames = blueprint.frames;
-        triangles = blueprint.triangles;
+        mesh = blueprint.mesh;
         currentFrame = 0;
-        numFrames = frames.size();
+        numFrames = mesh.frames.size();
         material = blueprint.material;
     }
 
     public Vertex[] getVertices() {
-        return (Vertex[]) frames.get(currentFrame).toArray();
+        final Vertex[] vertices = new Vertex[numVertices()];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = getVertex(i);
+        }
+        return vertices;
     }
 
+    /**
+     * Add a vertex to the current frame.
+     *
+     * @return a view of the new vertex, through which its normal can be set
+     */
     public Vertex addVertex(float x, float y, float z) {
-        Vertex v = new Vertex(x, y, z);
-        addVertex(v);
-        return v;
+        final Mesh.Frame frame = mesh.frames.get(currentFrame);
+        return frame.view(frame.addVertex(x, y, z));
+    }
+
+    /**
+     * Add a vertex to the current frame, without making a view of it.
+     */
+    void addPosition(float x, float y, float z) {
+        mesh.frames.get(currentFrame).addVertex(x, y, z);
     }
 
     public void addVertex(Vertex v) {
-        frames.get(currentFrame).add(v);
+        final Vector n = v.getNormal();
+        if (n == null) {
+            addVertex(v.x, v.y, v.z);
+        } else {
+            addVertex(v.x, v.y, v.z, n.x, n.y, n.z);
+        }
+    }
+
+    /**
+     * Add a vertex with a vertex normal to the current frame.  The normal is
+     * only used for smooth shading.
+     */
+    public void addVertex(float x, float y, float z, float nx, float ny, float nz) {
+        final Mesh.Frame frame = mesh.frames.get(currentFrame);
+        frame.setNormal(frame.addVertex(x, y, z), nx, ny, nz);
+    }
+
+    /**
+     * Set the normal of a vertex in the current frame.
+     *
+     * @param index the vertex index
+     */
+    public void setVertexNormal(int index, float nx, float ny, float nz) {
+        mesh.frames.get(currentFrame).setNormal(index, nx, ny, nz);
     }
 
     public Triangle addTriangle(int a, int b, int c) {
-        Triangle t = new Triangle(this, a, b, c);
-        triangles.add(t);
-        return t;
+        final int index = mesh.addTriangle(a, b, c, Float.NaN, Float.NaN, Float.NaN, Float.NaN,
+                Float.NaN, Float.NaN);
+        return new Triangle(this, index, a, b, c, null, null, null);
+    }
+
+    /**
+     * Add a triangle with texture coordinates.
+     */
+    public void addTriangle(int a, int b, int c, float ua, float va,
+            float ub, float vb, float uc, float vc) {
+        mesh.addTriangle(a, b, c, ua, va, ub, vb, uc, vc);
     }
 
     public void addTriangle(Triangle t) {
-        t.setParent(this);
-        triangles.add(t);
+        final UVCoord uva = t.getUVA(), uvb = t.getUVB(), uvc = t.getUVC();
+        if (uva == null) {
+            addTriangle(t.getIndexA(), t.getIndexB(), t.getIndexC());
+        } else {
+            addTriangle(t.getIndexA(), t.getIndexB(), t.getIndexC(),
+                    uva.u, uva.v, uvb.u, uvb.v, uvc.u, uvc.v);
+        }
     }
 
+    /**
+     * Add an empty frame.  Vertices can be added to it through the list
+     * returned, or, once it is made current with {@link #setFrame(int)},
+     * through {@link #addVertex(float, float, float)}.
+     *
+     * @return the vertices of the new frame, as views; vertices added to the
+     *         list are added to the frame, and they cannot be removed or
+     *         replaced
+     */
     public ArrayList<Vertex> addFrame() {
-        ArrayList<Vertex> vertices = new ArrayList<Vertex>();
-        frames.add(vertices);
+        final Mesh.Frame frame = new Mesh.Frame();
+        mesh.frames.add(frame);
         numFrames++;
-        return vertices;
+        return new FrameVertices(frame);
+    }
+
+    /**
+     * The vertices of a frame, as returned by {@link Model#addFrame()}.
+     * Geometry is only ever appended, so only adding changes the list.
+     */
+    private static final class FrameVertices extends ArrayList<Vertex> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Mesh.Frame frame;
+
+        FrameVertices(final Mesh.Frame frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        public boolean add(final Vertex v) {
+            final int index = frame.addVertex(v.x, v.y, v.z);
+            final Vector n = v.getNormal();
+            if (n != null) {
+                frame.setNormal(index, n.x, n.y, n.z);
+            }
+            return super.add(frame.view(index));
+        }
+
+        @Override
+        public void add(final int index, final Vertex v) {
+            if (index != size()) {
+                throw unsupported();
+            }
+            add(v);
+        }
+
+        @Override
+        public boolean addAll(final Collection<? extends Vertex> c) {
+            for (Vertex v : c) {
+                add(v);
+            }
+            return !c.isEmpty();
+        }
+
+        @Override
+        public boolean addAll(final int index, final Collection<? extends Vertex> c) {
+            if (index != size()) {
+                throw unsupported();
+            }
+            return addAll(c);
+        }
+
+        @Override
+        public Vertex set(final int index, final Vertex v) {
+            throw unsupported();
+        }
+
+        @Override
+        public Vertex remove(final int index) {
+            throw unsupported();
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            throw unsupported();
+        }
+
+        @Override
+        public boolean removeAll(final Collection<?> c) {
+            throw unsupported();
+        }
+
+        @Override
+        public boolean retainAll(final Collection<?> c) {
+            throw unsupported();
+        }
+
+        @Override
+        public boolean removeIf(final Predicate<? super Vertex> filter) {
+            throw unsupported();
+        }
+
+        @Override
+        public void replaceAll(final UnaryOperator<Vertex> operator) {
+            throw unsupported();
+        }
+
+        @Override
+        public void sort(final Comparator<? super Vertex> c) {
+            throw unsupported();
+        }
+
+        @Override
+        public void clear() {
+            throw unsupported();
+        }
+
+        @Override
+        public List<Vertex> subList(final int from, final int to) {
+            return Collections.unmodifiableList(super.subList(from, to));
+        }
+
+        private static UnsupportedOperationException unsupported() {
+            return new UnsupportedOperationException("vertices can only be added to a frame");
+        }
+
     }
 
     public void nextFrame() {
@@ -80,24 +276,54 @@ public class Model extends Object3D {
     }
 
     public void trim() {
-        triangles.trimToSize();
-        frames.trimToSize();
+        mesh.trim();
+    }
+
+    /**
+     * Get the packed vertex data of the current frame.
+     *
+     * @return the current frame, or <code>null</code> if there are no frames
+     */
+    Mesh.Frame frameData() {
+        return numFrames > 0 ? mesh.frames.get(currentFrame) : null;
     }
 
+    /**
+     * Get a view of a vertex of the current frame, through which its normal
+     * can be read and set (see {@link Vertex}).
+     *
+     * @param index the vertex index
+     */
     public Vertex getVertex(int index) {
-        return frames.get(currentFrame).get(index);
+        final Mesh.Frame frame = mesh.frames.get(currentFrame);
+        if (index >= frame.numVertices) {
+            throw new IndexOutOfBoundsException("vertex " + index + " (size is " + frame.numVertices + ")");
+        }
+        return frame.view(index);
     }
 
     public Triangle getTriangle(int index) {
-        return triangles.get(index);
+        if (index >= mesh.numTriangles) {
+            throw new IndexOutOfBoundsException("triangle " + index + " (size is " + mesh.numTriangles + ")");
+        }
+        final int[] v = mesh.indices;
+        final float[] uv = mesh.uvs;
+        final int i = index * 3, j = index * 6;
+        if (Float.isNaN(uv[j])) {
+            return new Triangle(this, index, v[i], v[i + 1], v[i + 2], null, null, null);
+        }
+        return new Triangle(this, index, v[i], v[i + 1], v[i + 2],
+                new UVCoord(uv[j], uv[j + 1]),
+                new UVCoord(uv[j + 2], uv[j + 3]),
+                new UVCoord(uv[j + 4], uv[j + 5]));
     }
 
     public int numVertices() {
-        return numFrames > 0 ? frames.get(currentFrame).size() : 0;
+        return numFrames > 0 ? mesh.frames.get(currentFrame).numVertices : 0;
     }
 
     public int numTriangles() {
-        return triangles.size();
+        return mesh.numTriangles;
     }
 
 }
@@ -62,7 +62,7 @@ public class ObjImporter {
         public void load(InputStream stream, Model model) throws IOException {
             int vOffset = model.numVertices();
             ArrayList<Vector> vn = null; // vertex normals
-            ArrayList<Vertex> vertices = new ArrayList<Vertex>();
+            int numVertices = 0;
             ArrayList<UVCoord> uvs = new ArrayList<UVCoord>();
 
             model.addFrame();
@@ -104,7 +104,8 @@ public class ObjImporter {
                         x = Float.parseFloat(parts[1]);
                         y = Float.parseFloat(parts[2]);
                         z = Float.parseFloat(parts[3]);
-                        vertices.add(model.addVertex(x, y, z));
+                        model.addPosition(x, y, z);
+                        numVertices++;
                     }
                     // System.out.println("v");
                 } else if (line.charAt(0) == 'f') {
@@ -118,13 +119,13 @@ public class ObjImporter {
                         if (parts2.length != 3) {
                             System.out.println("Error: you MUST have vertex normals");
                         } else {
-                            int vertIndex   = fixupIndex(Integer.parseInt(parts2[0]), vertices.size());
+                            int vertIndex   = fixupIndex(Integer.parseInt(parts2[0]), numVertices);
                             int normalIndex = fixupIndex(Integer.parseInt(parts2[2]), vn.size());
 
                             verts[i - 1] = vertIndex + vOffset;
                             Vector v = vn.get(normalIndex);
                             // v.invert(); // Ugh... wtf?
-                            model.getVertex(vertIndex + vOffset).n = v;
+                            model.setVertexNormal(vertIndex + vOffset, v.x, v.y, v.z);
                             if (parts2[1].length() > 0)
                                 uvs2[i - 1] = fixupIndex(Integer.parseInt(parts2[1]), uvs.size());
                         }
@@ -513,8 +514,7 @@ public class ObjImporter {
                         short n = nextUnsignedByte();
                         n -= 2; // ZOMG retarded blender export scrip
                         write("        -> "+(j)+": " + x + ", " + y + ", " + z + ", " + n);
-                        Vertex v = new Vertex(x, y, z, new Vector(normals[n][0], normals[n][1], normals[n][2]));
-                        model.addVertex(v);
+                        model.addVertex(x, y, z, normals[n][0], normals[n][1], normals[n][2]);
                     }
                 }
             }
@@ -1,86 +1,120 @@
 package sj3d;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Something placed in the scene by a rotation, a scale and a position.
+ *
+ * <p>The three are kept together in a {@link Transform} that is never
+ * changed, only replaced, so objects may be moved from any thread, even
+ * while they are being rendered: a frame reads each object's transform once,
+ * and sees it either before or after each change, never part-way through.
+ * Relative changes such as {@link #rotate(float, float, float)} are atomic,
+ * so concurrent ones all take effect.
+ */
 abstract class Object3D {
 
-    final Matrix transform;
+    /**
+     * A rotation, scale and position, and the matrix they make.
+     */
+    static final class Transform {
+
+        final float rotX, rotY, rotZ, sclX, sclY, sclZ, posX, posY, posZ;
+        private volatile Matrix matrix; // built when first needed, then never changed
+
+        Transform(final float rotX, final float rotY, final float rotZ,
+                  final float sclX, final float sclY, final float sclZ,
+                  final float posX, final float posY, final float posZ) {
+            this.rotX = rotX;
+            this.rotY = rotY;
+            this.rotZ = rotZ;
+            this.sclX = sclX;
+            this.sclY = sclY;
+            this.sclZ = sclZ;
+            this.posX = posX;
+            this.posY = posY;
+            this.posZ = posZ;
+        }
+
+        Matrix matrix() {
+
+            Matrix m = matrix;
+            if (m == null) {
+                // Threads racing here build equal matrices, so any may win
+                m = new Matrix();
+                m.setToRotationMatrix(rotX, rotY, rotZ);
+                m.multiplySelfByScaleMatrix(sclX, sclY, sclZ);
+                m.data[0][3] = posX;
+                m.data[1][3] = posY;
+                m.data[2][3] = posZ;
+                matrix = m;
+            }
+            return m;
+
+        }
 
-    protected float rotX, rotY, rotZ, sclX, sclY, sclZ, posX, posY, posZ;
-
-    protected boolean rebuildFlag = false;
-
-    public Object3D() {
+    }
 
-        rotX = rotY = rotZ = posX = posY = posZ = 0.0f;
-        sclX = sclY = sclZ = 1.0f;
-        transform = new Matrix();
+    private static final Transform IDENTITY = new Transform(0, 0, 0, 1, 1, 1, 0, 0, 0);
 
-    }
+    private final AtomicReference<Transform> transform = new AtomicReference<>(IDENTITY);
 
+    /**
+     * Get the transformation as it stands.  The matrix returned is never
+     * changed; moving the object gives it a new one instead, so a renderer
+     * can hold on to it for a consistent view of the object for a whole
+     * frame (see {@link SceneSnapshot}).
+     */
     Matrix getMatrix() {
 
-        if (!rebuildFlag)
-            return transform;
-        rebuildFlag = false;
-        transform.setToRotationMatrix(rotX, rotY, rotZ);
-        transform.multiplySelfByScaleMatrix(sclX, sclY, sclZ);
-        transform.data[0][3] = posX;
-        transform.data[1][3] = posY;
-        transform.data[2][3] = posZ;
-        return transform;
+        return transform.get().matrix();
 
     }
 
     public void rotate(float rx, float ry, float rz) {
 
-        this.rotX += rx;
-        this.rotY += ry;
-        this.rotZ += rz;
-        rebuildFlag = true;
+        update(t -> new Transform(t.rotX + rx, t.rotY + ry, t.rotZ + rz,
+                t.sclX, t.sclY, t.sclZ, t.posX, t.posY, t.posZ));
 
     }
 
     public void scale(float sx, float sy, float sz) {
 
-        sclX *= sx;
-        sclY *= sy;
-        sclZ *= sz;
-        rebuildFlag = true;
+        update(t -> new Transform(t.rotX, t.rotY, t.rotZ,
+                t.sclX * sx, t.sclY * sy, t.sclZ * sz, t.posX, t.posY, t.posZ));
 
     }
 
     public void translate(float xAmt, float yAmt, float zAmt) {
 
-        posX += xAmt;
-        posY += yAmt;
-        posZ += zAmt;
-        rebuildFlag = true;
+        update(t -> new Transform(t.rotX, t.rotY, t.rotZ,
+                t.sclX, t.sclY, t.sclZ, t.posX + xAmt, t.posY + yAmt, t.posZ + zAmt));
 
     }
 
     public void setRotation(float rx, float ry, float rz) {
 
-        rotX = rx;
-        rotY = ry;
-        rotZ = rz;
-        rebuildFlag = true;
+        update(t -> new Transform(rx, ry, rz, t.sclX, t.sclY, t.sclZ, t.posX, t.posY, t.posZ));
 
     }
 
     public void setPos(float x, float y, float z) {
 
-        posX = x;
-        posY = y;
-        posZ = z;
-        rebuildFlag = true;
+        update(t -> new Transform(t.rotX, t.rotY, t.rotZ, t.sclX, t.sclY, t.sclZ, x, y, z));
 
     }
 
     public void setScale(float x, float y, float z) {
 
-        sclX = x;
-        sclY = y;
-        sclZ = z;
-        rebuildFlag = true;
+        update(t -> new Transform(t.rotX, t.rotY, t.rotZ, x, y, z, t.posX, t.posY, t.posZ));
+
+    }
+
+    // Replace the transform, retrying if another thread replaced it first
+    private void update(final UnaryOperator<Transform> change) {
+
+        transform.updateAndGet(change);
 
     }
 
@@ -0,0 +1,158 @@
+package sj3d;
+
+import java.util.Arrays;
+
+/**
+ * A coarse depth buffer kept alongside a renderer's depth buffer, used to
+ * skip triangles and models that are hidden behind what is already drawn.
+ *
+ * <p>The screen is divided into 8x8-pixel cells.  Each cell holds a value that
+ * is never greater than any depth-buffer value in the cell (depths are stored
+ * as 1/z, so a smaller value is farther away).  Anything whose nearest point
+ * is not nearer than every cell it overlaps would fail the depth test at
+ * every pixel, so it can be skipped without changing the image.
+ *
+ * <p>Cells are raised only when a triangle covers them completely, to the
+ * triangle's farthest depth.  Depth-buffer values never decrease during a
+ * frame, so the cells stay valid however stale they get.
+ */
+final class OcclusionBuffer {
+
+    static final int CELL_SHIFT = 3;
+    static final int CELL_SIZE = 1 << CELL_SHIFT;
+
+    // How far, in pixels, a triangle must reach past a cell to count as
+    // covering it.  This hides the difference between the exact triangle and
+    // the pixels the rasterizer fills.
+    private static final float COVER_MARGIN = 2;
+
+    // Relative slack for rounding in interpolated depths
+    private static final float DEPTH_SLACK = 1e-5f;
+
+    private final int width, height;
+    private final int cols, rows;
+    private final float[] cells;
+
+    OcclusionBuffer(final int width, final int height) {
+        this.width = width;
+        this.height = height;
+        cols = (width + CELL_SIZE - 1) >> CELL_SHIFT;
+        rows = (height + CELL_SIZE - 1) >> CELL_SHIFT;
+        cells = new float[cols * rows];
+    }
+
+    /**
+     * Reset every cell to match a cleared depth buffer.
+     */
+    void clear() {
+        Arrays.fill(cells, 0);
+    }
+
+    /**
+     * Determine whether everything in a screen rectangle at or behind the given
+     * depth is hidden.
+     *
+     * @param x0   the left edge of the rectangle (inclusive)
+     * @param y0   the top edge of the rectangle (inclusive)
+     * @param x1   the right edge of the rectangle (inclusive)
+     * @param y1   the bottom edge of the rectangle (inclusive)
+     * @param z    the nearest depth (largest 1/z) of anything in the rectangle
+     * @return true if nothing in the rectangle can pass the depth test
+     */
+    boolean isOccluded(int x0, int y0, int x1, int y1, final float z) {
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, width - 1);
+        y1 = Math.min(y1, height - 1);
+        final float limit = z * (1 + DEPTH_SLACK);
+        for (int cy = y0 >> CELL_SHIFT, cyEnd = y1 >> CELL_SHIFT; cy <= cyEnd; ++cy) {
+            for (int c = cy * cols + (x0 >> CELL_SHIFT), cEnd = cy * cols + (x1 >> CELL_SHIFT); c <= cEnd; ++c) {
+                if (cells[c] < limit) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determine whether a triangle record is hidden inside a clipping
+     * rectangle.
+     *
+     * @see Renderer#renderTriangle
+     */
+    boolean isOccluded(final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+        final int a = off, b = off + Renderer.VERTEX_STRIDE, c = off + 2 * Renderer.VERTEX_STRIDE;
+        final float minX = Math.min(tri[a + Renderer.X], Math.min(tri[b + Renderer.X], tri[c + Renderer.X]));
+        final float maxX = Math.max(tri[a + Renderer.X], Math.max(tri[b + Renderer.X], tri[c + Renderer.X]));
+        final float maxZ = Math.max(tri[a + Renderer.Z], Math.max(tri[b + Renderer.Z], tri[c + Renderer.Z]));
+        return isOccluded(
+                Math.max((int) minX - 1, clipX0),
+                Math.max((int) tri[a + Renderer.Y], clipY0),
+                Math.min((int) maxX + 1, clipX1 - 1),
+                Math.min((int) tri[c + Renderer.Y], clipY1 - 1),
+                maxZ);
+    }
+
+    /**
+     * Raise the cells inside a clipping rectangle that a triangle record
+     * has just covered completely.
+     *
+     * @see Renderer#renderTriangle
+     */
+    void update(final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // The rasterizer works with vertex y-coordinates rounded down
+        final int a = off, b = off + Renderer.VERTEX_STRIDE, c = off + 2 * Renderer.VERTEX_STRIDE;
+        final float ax = tri[a + Renderer.X], ay = (int) tri[a + Renderer.Y];
+        final float bx = tri[b + Renderer.X], by = (int) tri[b + Renderer.Y];
+        final float cx = tri[c + Renderer.X], cy = (int) tri[c + Renderer.Y];
+        final float area = (bx - ax) * (cy - ay) - (cx - ax) * (by - ay);
+        if (area == 0 || Float.isNaN(area)) {
+            return;
+        }
+        final float sign = area > 0 ? 1 : -1;
+        final float minZ = Math.min(tri[a + Renderer.Z], Math.min(tri[b + Renderer.Z], tri[c + Renderer.Z]))
+                * (1 - DEPTH_SLACK);
+
+        // Cells entirely inside both the triangle's bounds and the clipping
+        // rectangle
+        final int x0 = Math.max((int) Math.min(ax, Math.min(bx, cx)), clipX0);
+        final int x1 = Math.min((int) Math.max(ax, Math.max(bx, cx)), clipX1);
+        final int y0 = Math.max((int) ay, clipY0);
+        final int y1 = Math.min((int) cy, clipY1);
+        final int cellX0 = (x0 + CELL_SIZE - 1) >> CELL_SHIFT;
+        final int cellY0 = (y0 + CELL_SIZE - 1) >> CELL_SHIFT;
+        final int cellX1 = (x1 == width) ? cols : x1 >> CELL_SHIFT;
+        final int cellY1 = (y1 == height) ? rows : y1 >> CELL_SHIFT;
+
+        for (int cellY = cellY0; cellY < cellY1; ++cellY) {
+            final float top = (cellY << CELL_SHIFT) - COVER_MARGIN;
+            final float bottom = Math.min((cellY + 1) << CELL_SHIFT, height) + COVER_MARGIN;
+            for (int cellX = cellX0; cellX < cellX1; ++cellX) {
+                final int cell = cellY * cols + cellX;
+                if (cells[cell] >= minZ) {
+                    continue;
+                }
+                final float left = (cellX << CELL_SHIFT) - COVER_MARGIN;
+                final float right = Math.min((cellX + 1) << CELL_SHIFT, width) + COVER_MARGIN;
+                if (inside(ax, ay, bx, by, cx, cy, sign, left, top)
+                        && inside(ax, ay, bx, by, cx, cy, sign, right, top)
+                        && inside(ax, ay, bx, by, cx, cy, sign, left, bottom)
+                        && inside(ax, ay, bx, by, cx, cy, sign, right, bottom)) {
+                    cells[cell] = minZ;
+                }
+            }
+        }
+    }
+
+    private static boolean inside(final float ax, final float ay, final float bx, final float by,
+            final float cx, final float cy, final float sign, final float x, final float y) {
+        return sign * ((bx - ax) * (y - ay) - (by - ay) * (x - ax)) >= 0
+            && sign * ((cx - bx) * (y - by) - (cy - by) * (x - bx)) >= 0
+            && sign * ((ax - cx) * (y - cy) - (ay - cy) * (x - cx)) >= 0;
+    }
+
+}
@@ -0,0 +1,62 @@
+package sj3d;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Helpers for splitting render work across a {@link ForkJoinPool}.
+ */
+final class Parallel {
+
+    private Parallel() {
+    }
+
+    /**
+     * Run <code>body</code> once for every index from 0 (inclusive) to
+     * <code>count</code> (exclusive), spreading the calls across the
+     * threads of <code>pool</code>, or in order on the calling thread if
+     * there is no pool.  Returns when every call has finished.
+     *
+     * @param pool  the pool to run on, or <code>null</code>
+     * @param count the number of indices
+     * @param body  the work to do for each index
+     */
+    static void forEach(final ForkJoinPool pool, final int count, final IntConsumer body) {
+        if (pool == null) {
+            for (int i = 0; i < count; ++i) {
+                body.accept(i);
+            }
+        } else {
+            pool.invoke(new Range(body, 0, count));
+        }
+    }
+
+    private static final class Range extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final IntConsumer body;
+        private final int lo, hi;
+
+        Range(final IntConsumer body, final int lo, final int hi) {
+            this.body = body;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= 1) {
+                if (hi > lo) {
+                    body.accept(lo);
+                }
+            } else {
+                final int mid = (lo + hi) >>> 1;
+                invokeAll(new Range(body, lo, mid), new Range(body, mid, hi));
+            }
+        }
+
+    }
+
+}
@@ -8,10 +8,52 @@ package sj3d;
  * <li>Maximum shade mode: smooth & textured</li>
  * <li>Shadows: off</li>
  * <li>Antialiasing: 1x (none)</li>
+ * <li>Threads: 1</li>
+ * <li>Occlusion culling: off</li>
+ * <li>Depth sorting: off</li>
+ * <li>Rasterizer: scanline</li>
+ * <li>Vector span shading: off</li>
+ * <li>Texture subdivision: 1 (exact)</li>
+ * <li>Mipmapping: off</li>
+ * <li>Texture tiling: off</li>
+ * <li>Deferred shading: off</li>
+ * <li>Picking: on</li>
+ * <li>Partial clearing: off</li>
+ * <li>Pipelining: off</li>
+ * <li>Triple buffering: off</li>
  * </ul>
  */
 public final class RenderSettings {
 
+    // Constants
+
+    /**
+     * Parallel mode that splits the screen into tiles and rasterizes the tiles
+     * in parallel.  Works best when triangles are spread evenly over the
+     * screen.
+     */
+    public static final int PARALLEL_TILES = 0;
+
+    /**
+     * Parallel mode that splits the models (and the triangles of big models)
+     * across threads, each drawing into its own buffers, and merges the
+     * buffers by depth afterwards.  Works best for scenes with a few large
+     * models, at the cost of one extra set of buffers per thread.
+     */
+    public static final int PARALLEL_MODELS = 1;
+
+    /**
+     * Rasterizer that walks each triangle one scanline at a time.
+     */
+    public static final int RASTERIZER_SCANLINE = 0;
+
+    /**
+     * Rasterizer that tests pixels against the edges of each triangle in
+     * fixed point, skipping or filling whole 8x8 blocks of pixels where it
+     * can. Gives exact, gap-free coverage along shared edges.
+     */
+    public static final int RASTERIZER_HALF_SPACE = 1;
+
     // Settings
 
     /**
@@ -29,6 +71,77 @@ public final class RenderSettings {
      */
     int mblur = 0xFF000000;
 
+    /**
+     * The number of threads used to render each frame
+     */
+    int threads = 1;
+
+    /**
+     * How the work is split between threads
+     */
+    int parallelMode = PARALLEL_TILES;
+
+    /**
+     * Whether hidden triangles and models are skipped using a coarse depth
+     * buffer
+     */
+    boolean occlusionCulling = false;
+
+    /**
+     * Whether models are drawn from near to far
+     */
+    boolean depthSorting = false;
+
+    /**
+     * Which rasterizer draws the triangles
+     */
+    int rasterizer = RASTERIZER_SCANLINE;
+
+    /**
+     * Whether long spans are shaded with the vector API when available
+     */
+    boolean vectorSpans = false;
+
+    /**
+     * The number of pixels between exact texture coordinates
+     */
+    int textureSubdivision = 1;
+
+    /**
+     * Whether power-of-two textures are mipmapped and repeated
+     */
+    boolean mipmapping = false;
+
+    /**
+     * Whether mipmapped textures are read from a copy stored in tiles
+     */
+    boolean textureTiling = false;
+
+    /**
+     * Whether visibility is resolved before any pixel is shaded
+     */
+    boolean deferredShading = false;
+
+    /**
+     * Whether the model at each pixel is kept for picking
+     */
+    boolean picking = true;
+
+    /**
+     * Whether only the parts of the buffers drawn on are cleared
+     */
+    boolean partialClearing = false;
+
+    /**
+     * Whether consecutive frames are rendered overlapping
+     */
+    boolean pipelining = false;
+
+    /**
+     * Whether finished frames are handed over through three images
+     */
+    boolean tripleBuffering = false;
+
     // Methods
 
     public void setBackgroundColor(int color) {
@@ -42,7 +155,9 @@ public final class RenderSettings {
      * higher quality, and even smaller values can be used for low-quality
      * rendering. (There is no point to this last one, however, as the overhead
      * and processing associated with scaling the result will effectively
-     * eliminate any speed gains.)
+     * eliminate any speed gains.) Whole factors average each square of
+     * samples into a pixel, which is the fastest; other factors filter rows
+     * and then columns, weighting samples by how much of each a pixel covers.
      *
      * @param factor
      */
@@ -81,4 +196,240 @@ public final class RenderSettings {
         return (mblur >>> 24) < 0xFF;
     }
 
+    /**
+     * Set the number of threads used to render each frame. With more than one
+     * thread, the work is split as set by {@link #setParallelMode(int)}. The
+     * rendered image is the same no matter how many threads are used.
+     *
+     * @param threads
+     *            the number of threads (values below 1 are treated as 1)
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(threads, 1);
+    }
+
+    /**
+     * Determine whether these settings render with more than one thread.
+     *
+     * @return true if rendering is multithreaded, or false otherwise
+     */
+    public boolean isMultithreaded() {
+        return threads > 1;
+    }
+
+    /**
+     * Set how the work is split between threads when rendering with more than
+     * one thread.
+     *
+     * @param mode
+     *            either {@link #PARALLEL_TILES} (the default) or
+     *            {@link #PARALLEL_MODELS}
+     */
+    public void setParallelMode(int mode) {
+        parallelMode = mode;
+    }
+
+    /**
+     * Enable or disable occlusion culling. When enabled, a coarse copy of the
+     * depth buffer is kept so that triangles and models hidden behind ones
+     * already drawn can be skipped without rasterizing them. The rendered
+     * image is the same either way; the culling pays off in scenes where
+     * models hide each other, especially when near models are drawn first.
+     *
+     * @param enabled
+     *            true to enable occlusion culling
+     */
+    public void setOcclusionCulling(boolean enabled) {
+        occlusionCulling = enabled;
+    }
+
+    /**
+     * Enable or disable depth sorting. When enabled, models are drawn from
+     * near to far (by the centers of their bounds) instead of in the order
+     * they were added, so more pixels fail the depth test before they are
+     * shaded. Where two surfaces are at exactly the same depth, the one drawn
+     * first wins, so the image can differ in such places.
+     *
+     * @param enabled
+     *            true to enable depth sorting
+     * @see World#getStatistics()
+     */
+    public void setDepthSorting(boolean enabled) {
+        depthSorting = enabled;
+    }
+
+    /**
+     * Set which rasterizer draws the triangles. Both draw every material with
+     * the same texture settings (subdivision, mipmapping and tiling), but
+     * deferred shading and vector span shading always use the scanline
+     * rasterizer. The images are not the same: the two decide slightly
+     * differently which pixels along a triangle's edges they cover, and the
+     * half-space rasterizer works out depth, light and texture coordinates at
+     * pixel centers while the scanline rasterizer snaps vertices to whole
+     * rows. So besides edges moving by a pixel, colors across a surface can
+     * differ by a few levels and texture detail can move by a texel; in a
+     * textured scene that is typically a fifth of the pixels.
+     *
+     * @param rasterizer
+     *            either {@link #RASTERIZER_SCANLINE} (the default) or
+     *            {@link #RASTERIZER_HALF_SPACE}
+     */
+    public void setRasterizer(int rasterizer) {
+        this.rasterizer = rasterizer;
+    }
+
+    /**
+     * Enable or disable shading long spans of untextured triangles several
+     * pixels at a time with the <code>jdk.incubator.vector</code> module.
+     * The module must be added when starting Java
+     * (<code>--add-modules jdk.incubator.vector</code>); without it, spans
+     * are shaded one pixel at a time as usual. The rendered image is the
+     * same either way. Only the scanline rasterizer uses it.
+     *
+     * @param enabled
+     *            true to enable vector span shading
+     */
+    public void setVectorSpans(boolean enabled) {
+        vectorSpans = enabled;
+    }
+
+    /**
+     * Set how often texture coordinates are computed exactly along a
+     * scanline. With a value of 1, every pixel gets perspective-correct
+     * texture coordinates, at the cost of a division per pixel. With larger
+     * values, they are only computed exactly every so many pixels and
+     * interpolated linearly in between, which is much faster and usually
+     * looks the same; surfaces seen at a steep angle up close may show slight
+     * warping.
+     *
+     * @param pixels
+     *            the number of pixels, rounded down to a power of two between
+     *            1 and 64 (8 or 16 are good choices)
+     */
+    public void setTextureSubdivision(int pixels) {
+        textureSubdivision = Integer.highestOneBit(Math.min(Math.max(pixels, 1), 64));
+    }
+
+    /**
+     * Enable or disable mipmapping. When enabled, textures whose sides are
+     * powers of two are drawn from a smaller copy where they appear small on
+     * the screen, which looks smoother and reads far less memory, and repeat
+     * outside texture coordinates 0 to 1 rather than stretching their edges.
+     *
+     * @param enabled
+     *            true to enable mipmapping
+     */
+    public void setMipmapping(boolean enabled) {
+        mipmapping = enabled;
+    }
+
+    /**
+     * Enable or disable texture tiling. When enabled along with mipmapping,
+     * textures are read from a copy stored in small square tiles rather than
+     * row by row, so texels that are close together on the screen are usually
+     * close together in memory whichever way the texture is turned. This
+     * helps most with large textures on rotated surfaces. Textures drawn with
+     * tiling on keep the copy, and must have {@link Texture#updateMipmaps()}
+     * called when their pixels change.
+     *
+     * @param enabled
+     *            true to enable texture tiling
+     */
+    public void setTextureTiling(boolean enabled) {
+        textureTiling = enabled;
+    }
+
+    /**
+     * Enable or disable deferred shading. When enabled, every triangle is
+     * first drawn into the depth buffer alone, and each pixel left visible is
+     * then shaded exactly once, by rows. This saves the shading of pixels that
+     * are later drawn over, so it pays off in scenes with a lot of overdraw
+     * and expensive materials. The image is the same either way. Deferred
+     * shading always uses the scanline rasterizer and never uses vector span
+     * shading; it splits the screen into tiles even on one thread.
+     *
+     * @param enabled
+     *            true to enable deferred shading
+     */
+    public void setDeferredShading(boolean enabled) {
+        deferredShading = enabled;
+    }
+
+    /**
+     * Enable or disable picking. When enabled, the ID of the model drawn at
+     * each pixel is kept, for {@link World#getModelAtPoint(int, int)} to look
+     * up. Turning it off saves writing an ID for every pixel drawn, and the
+     * memory of the ID buffer, when models never need to be picked.
+     *
+     * @param enabled
+     *            true to enable picking
+     */
+    public void setPicking(boolean enabled) {
+        picking = enabled;
+    }
+
+    /**
+     * Enable or disable partial clearing. When enabled, the screen is split
+     * into square tiles, and only the tiles that were drawn on in the
+     * previous frame are cleared before the next one. The rest still hold the
+     * background color and an empty depth. This saves memory bandwidth when
+     * models cover little of a large screen. The image is the same either
+     * way. With more than one thread, clearing is spread across threads
+     * whether or not this is enabled.
+     *
+     * @param enabled
+     *            true to enable partial clearing
+     */
+    public void setPartialClearing(boolean enabled) {
+        partialClearing = enabled;
+    }
+
+    /**
+     * Enable or disable pipelining. When enabled, {@link World#render()}
+     * takes a snapshot of the camera and the model transformations and
+     * returns once the previous frame is finished; the new frame is culled
+     * and set up on one thread while the previous one is rasterized and
+     * resolved on the others, and while the caller prepares the next. This
+     * raises the frame rate on machines with several cores, at the cost of
+     * the image lagging one frame behind the scene (see
+     * {@link World#flush()}). The frames themselves are the same as
+     * without pipelining.
+     *
+     * <p>Pipelining uses at least two threads, even if {@link #setThreads(int)}
+     * asks for one, since the overlap needs a thread to set up frames on.
+     * It always rasterizes in screen tiles, so it ignores
+     * {@link #setParallelMode(int)}, and, as with tiles, occlusion culling
+     * only skips hidden triangles, not whole models.  It turns off depth
+     * sorting and picking, which need the frame to be finished before the
+     * next one starts.
+     *
+     * @param enabled
+     *            true to enable pipelining
+     */
+    public void setPipelining(boolean enabled) {
+        pipelining = enabled;
+    }
+
+    /**
+     * Enable or disable triple buffering. When enabled, a world rendering
+     * into an image keeps three, and {@link World#getImage()} always returns
+     * the newest finished frame, which is never drawn into while it is being
+     * shown. The thread showing frames then needs no lock shared with the
+     * thread rendering them, and neither ever waits for the other. Frames are
+     * drawn, resolved or copied out of the pipeline straight into the image
+     * they are shown from, so this costs no extra copying; but without
+     * antialiasing or motion blur, partial clearing (see
+     * {@link #setPartialClearing(boolean)}) clears the whole screen, since
+     * each frame is drawn over the one from three frames before.
+     *
+     * <p>Worlds rendering into pixels supplied by the caller ignore this
+     * setting.
+     *
+     * @param enabled
+     *            true to enable triple buffering
+     */
+    public void setTripleBuffering(boolean enabled) {
+        tripleBuffering = enabled;
+    }
+
 }
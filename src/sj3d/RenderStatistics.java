@@ -0,0 +1,119 @@
+package sj3d;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing the work done to render the most recent frame.  Useful
+ * for judging how much overdraw a scene has, and how much settings such as
+ * {@link RenderSettings#setDepthSorting(boolean)} save.
+ *
+ * @see World#getStatistics()
+ */
+public final class RenderStatistics {
+
+    private final int pixels;
+    int models, culledModels;
+    final LongAdder instances = new LongAdder();
+    final LongAdder culledInstances = new LongAdder();
+    final LongAdder fragments = new LongAdder();
+    final LongAdder shadedFragments = new LongAdder();
+
+    RenderStatistics(final int pixels) {
+        this.pixels = pixels;
+    }
+
+    void reset() {
+        models = 0;
+        culledModels = 0;
+        instances.reset();
+        culledInstances.reset();
+        fragments.reset();
+        shadedFragments.reset();
+    }
+
+    // Add the counts of another set of statistics to these
+    void add(final RenderStatistics other) {
+        models += other.models;
+        culledModels += other.culledModels;
+        instances.add(other.instances.sum());
+        culledInstances.add(other.culledInstances.sum());
+        fragments.add(other.fragments.sum());
+        shadedFragments.add(other.shadedFragments.sum());
+    }
+
+    /**
+     * Get the number of models that were drawn, that is, that were at least
+     * partly in view.
+     *
+     * @return the number of models drawn
+     */
+    public int getModels() {
+        return models;
+    }
+
+    /**
+     * Get the number of models skipped because they were out of view.
+     *
+     * @return the number of models culled
+     */
+    public int getCulledModels() {
+        return culledModels;
+    }
+
+    /**
+     * Get the number of instances of {@link InstanceBatch}es that were drawn.
+     *
+     * @return the number of instances drawn
+     */
+    public long getInstances() {
+        return instances.sum();
+    }
+
+    /**
+     * Get the number of instances skipped because they were out of view.
+     *
+     * @return the number of instances culled
+     */
+    public long getCulledInstances() {
+        return culledInstances.sum();
+    }
+
+    /**
+     * Get the number of pixels that triangles covered and that were depth
+     * tested.
+     *
+     * @return the number of fragments
+     */
+    public long getFragments() {
+        return fragments.sum();
+    }
+
+    /**
+     * Get the number of pixels that passed the depth test and were shaded.
+     * The difference from {@link #getFragments()} is the number of pixels
+     * that were rejected before any shading was done.
+     *
+     * @return the number of shaded fragments
+     */
+    public long getShadedFragments() {
+        return shadedFragments.sum();
+    }
+
+    /**
+     * Get the average number of times each pixel (including those covered by
+     * no model) was shaded.
+     *
+     * @return the overdraw
+     */
+    public float getOverdraw() {
+        return (float) getShadedFragments() / pixels;
+    }
+
+    public String toString() {
+        return "RenderStatistics[models=" + models + ", culled=" + culledModels
+                + ", instances=" + getInstances() + ", culledInstances=" + getCulledInstances()
+                + ", fragments=" + getFragments() + ", shaded=" + getShadedFragments()
+                + ", overdraw=" + getOverdraw() + "]";
+    }
+
+}
@@ -0,0 +1,9540 @@
+package sj3d;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Renders worlds.
+ *
+ * <p>Rendering a triangle happens in two steps.  Triangle setup projects the
+ * triangle, works out its lighting, and writes the result into a small
+ * <code>float[]</code> record (see {@link #TRIANGLE_STRIDE}).  Rasterization
+ * then fills the pixels covered by that record.  Rasterization only reads the
+ * record, the material, and the buffers, so records may be rasterized later
+ * and from several threads at once, as long as no two threads draw to the
+ * same pixels.
+ *
+ * <p>Everything a renderer works out while rendering, such as projected
+ * vertices and triangle records, is kept in its own scratch buffers.  Models
+ * are only read, so renderers of different worlds may render the same models
+ * at the same time.
+ */
+final class Renderer {
+
+    // Triangle record layout.  Each record holds three vertices, sorted by
+    // screen y-coordinate, and each vertex holds these values:
+    static final int X = 0; // screen x-coordinate
+    static final int Y = 1; // screen y-coordinate
+    static final int Z = 2; // 1/z
+    static final int L = 3; // light amount
+    static final int U = 4; // texture u-coordinate times 1/z
+    static final int V = 5; // texture v-coordinate times 1/z
+    static final int VERTEX_STRIDE = 6;
+    static final int TRIANGLE_STRIDE = 3 * VERTEX_STRIDE;
+
+    // Results of testFrustum
+    static final int OUTSIDE = 0;
+    static final int CLIPPED = 1;
+    static final int INSIDE = 2;
+
+    // Results of classifyTriangle
+    private static final int CULL = 0;
+    private static final int DRAW = 1;
+    private static final int CLIP = 2;
+
+    // Distance from the camera to the near clipping plane
+    static final float NEAR = 0.01f;
+
+    // How far outside the screen, in pixels, triangles may reach before they
+    // are clipped in screen space
+    static final float GUARD_BAND = 4096;
+
+    // Fixed-point light factors for texels, where LIGHT_ONE leaves them as
+    // they are
+    private static final int LIGHT_BITS = 8;
+    private static final int LIGHT_ONE = 1 << LIGHT_BITS;
+
+    // Fraction bits of light levels interpolated along a span
+    static final int LIGHT_STEP_BITS = 16;
+    private static final int LIGHT_STEP_ONE = 1 << LIGHT_STEP_BITS;
+
+    // Half-space rasterizer: vertex precision, block size, and the magnitude
+    // edge function values are clamped to within a block
+    private static final int SUBPIXEL_BITS = 4;
+    private static final int SUBPIXEL = 1 << SUBPIXEL_BITS;
+    private static final int BLOCK_SIZE = 8;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    private static final long EDGE_LIMIT = 1 << 30;
+
+    // Lighting
+    private final Vector lightVector;
+    private float lightAmbient, lightIntensity;
+
+    // Settings
+    private final int width, height;
+    private final int halfwidth, halfheight;
+    private final float fudgeScaling;
+    private final int ALPHA;
+
+    // View frustum planes in camera coordinates: the normal (pointing into
+    // the frustum) and offset of the near, left, right, top & bottom planes
+    private final float[] frustum;
+
+    // Buffers
+    private int[] pixels; // replaced when drawing into a swap chain
+    private final float[] zbuf; // depth of object at each pixel
+    private final int[] idbuf; // ID of the model at each pixel, or null if picking is off
+    private final OcclusionBuffer occlusion; // coarse zbuf, or null if disabled
+
+    // Whether each tile of the buffers (tiles are TileBinner.TILE_SIZE
+    // pixels square) has been drawn on since it was last cleared, or null to
+    // clear the whole buffers every time
+    private final boolean[] dirtyTiles;
+    private final int tileCols, tileRows;
+
+    final RenderStatistics statistics; // shared by all renderers of a world
+    private final boolean halfSpace; // which rasterizer to use
+    private final SpanShader spans; // shades long untextured spans, or null
+    private final int subdivision; // pixels per exact texture divide, a power of two
+    private final boolean mipmapping; // whether power-of-two textures are mipmapped
+    private final boolean textureTiling; // whether mipmaps are read from tiled copies
+    private final Vector tmpVector = new Vector();
+    private final Matrix projectionMatrix = new Matrix();
+    private final Matrix inverseMatrix = new Matrix();
+    private final Matrix boundsMatrix = new Matrix();
+    private final Matrix packedMatrix = new Matrix(); // loaded from packed transformations
+    private final float[] tmpCorners = new float[8 * 3];
+    private final float[] clipBufferA = new float[9 * VERTEX_STRIDE];
+    private final float[] clipBufferB = new float[9 * VERTEX_STRIDE];
+    private final Vector tmpNormal = new Vector();
+    private final float[] tmpTriangle = new float[TRIANGLE_STRIDE];
+    private float[] projected = new float[0]; // x, y, 1/z of each vertex
+
+    Renderer(final int width, final int height, final int[] pixels,
+            final float[] zbuf, final int[] idbuf,
+            final RenderSettings settings, final RenderStatistics statistics) {
+
+        // Screen size
+        this.width = width;
+        this.height = height;
+        halfwidth = width / 2;
+        halfheight = height / 2;
+
+        // Scale factor to make coordinates more natural
+        final float FOV = 1.04719755f, d = 1.0f / ((float) Math.tan(FOV));
+        fudgeScaling = (d / ((float)width / height) + 1) * halfwidth;
+
+        // A point is on screen if |x/z| and |y/z| are below these, with a
+        // pixel to spare
+        final float tx = (width - halfwidth + 1) / fudgeScaling;
+        final float ty = (height - halfheight + 1) / fudgeScaling;
+        final float lx = (float) Math.sqrt(1 + tx * tx);
+        final float ly = (float) Math.sqrt(1 + ty * ty);
+        frustum = new float[] {
+                0, 0, 1, -NEAR,
+                1 / lx, 0, tx / lx, 0,
+                -1 / lx, 0, tx / lx, 0,
+                0, 1 / ly, ty / ly, 0,
+                0, -1 / ly, ty / ly, 0,
+        };
+
+        // this.vertices = vertices;
+        this.pixels = pixels;
+        this.zbuf = zbuf;
+        this.idbuf = idbuf;
+        this.statistics = statistics;
+        this.lightVector = new Vector(0, 1, 0);
+        this.lightAmbient = 0;
+        this.lightIntensity = 1;
+
+        // Configure settings
+        ALPHA = settings.mblur;
+        halfSpace = settings.rasterizer == RenderSettings.RASTERIZER_HALF_SPACE;
+        spans = settings.vectorSpans ? SpanShader.load() : null;
+        subdivision = settings.textureSubdivision;
+        mipmapping = settings.mipmapping;
+        textureTiling = settings.textureTiling;
+        occlusion = settings.occlusionCulling ? new OcclusionBuffer(width, height) : null;
+        tileCols = (width + TileBinner.TILE_SIZE - 1) >> TileBinner.TILE_SHIFT;
+        tileRows = (height + TileBinner.TILE_SIZE - 1) >> TileBinner.TILE_SHIFT;
+        dirtyTiles = settings.partialClearing ? new boolean[tileCols * tileRows] : null;
+        if (dirtyTiles != null) {
+            // The buffers are not cleared to begin with
+            Arrays.fill(dirtyTiles, true);
+        }
+
+    }
+
+    /**
+     * Set the scene lighting.
+     *
+     * @param x
+     *            the x-component of the light direction
+     * @param y
+     *            the y-component of the light direction
+     * @param z
+     *            the z-component of the light direction
+     * @param intensity
+     *            the intensity of the light
+     * @param ambient
+     *            the ambient intensity
+     */
+    void setLighting(final float x, final float y, final float z,
+                     final float intensity, final float ambient) {
+        lightVector.set(x, y, z);
+        lightVector.normalize();
+        lightIntensity = intensity;
+        lightAmbient = ambient;
+    }
+
+    /**
+     * Test a model's bounding volumes against the camera's view frustum.
+     *
+     * @param camera
+     *            the camera
+     * @param scene
+     *            the scene the model is in
+     * @param model
+     *            the index of the model to test
+     * @return {@link #OUTSIDE} if the model cannot be seen, {@link #INSIDE}
+     *         if it is entirely in view, or {@link #CLIPPED} otherwise
+     */
+    int testFrustum(final Camera camera, final SceneSnapshot scene, final int model) {
+        return testFrustum(camera, scene.matrices[model], scene.frames[model]);
+    }
+
+    private int testFrustum(final Camera camera, final Matrix matrix, final Mesh.Frame frame) {
+
+        if (frame == null || frame.numVertices == 0) {
+            return OUTSIDE;
+        }
+
+        boundsMatrix.resetToIdentity();
+        boundsMatrix.multiplySelf(camera.getMatrix());
+        boundsMatrix.multiplySelf(matrix);
+        final float[][] m = boundsMatrix.data;
+
+        // Bounding sphere, in camera coordinates.  The radius is padded a
+        // little so rounding cannot leave a vertex outside it.
+        final float sx = m[0][0] * m[0][0] + m[1][0] * m[1][0] + m[2][0] * m[2][0];
+        final float sy = m[0][1] * m[0][1] + m[1][1] * m[1][1] + m[2][1] * m[2][1];
+        final float sz = m[0][2] * m[0][2] + m[1][2] * m[1][2] + m[2][2] * m[2][2];
+        final float scale = (float) Math.sqrt(Math.max(sx, Math.max(sy, sz)));
+        final float r = frame.radius * scale * 1.001f + 0.001f;
+        final float cx = transformX(m, frame.centerX, frame.centerY, frame.centerZ);
+        final float cy = transformY(m, frame.centerX, frame.centerY, frame.centerZ);
+        final float cz = transformZ(m, frame.centerX, frame.centerY, frame.centerZ);
+
+        boolean inside = true;
+        for (int p = 0; p < frustum.length; p += 4) {
+            final float d = frustum[p] * cx + frustum[p + 1] * cy + frustum[p + 2] * cz + frustum[p + 3];
+            if (d < -r) {
+                return OUTSIDE;
+            }
+            inside &= d >= r;
+        }
+        if (inside) {
+            return INSIDE;
+        }
+
+        // The sphere straddles a plane, so try the tighter bounding box
+        final float[] corners = tmpCorners;
+        for (int i = 0; i < 8; ++i) {
+            final float x = (i & 1) == 0 ? frame.minX : frame.maxX;
+            final float y = (i & 2) == 0 ? frame.minY : frame.maxY;
+            final float z = (i & 4) == 0 ? frame.minZ : frame.maxZ;
+            corners[i * 3] = transformX(m, x, y, z);
+            corners[i * 3 + 1] = transformY(m, x, y, z);
+            corners[i * 3 + 2] = transformZ(m, x, y, z);
+        }
+        for (int p = 0; p < frustum.length; p += 4) {
+            int outside = 0;
+            for (int i = 0; i < 24; i += 3) {
+                if (frustum[p] * corners[i] + frustum[p + 1] * corners[i + 1] + frustum[p + 2] * corners[i + 2] + frustum[p + 3] < 0) {
+                    ++outside;
+                }
+            }
+            if (outside == 8) {
+                return OUTSIDE;
+            }
+            inside &= outside == 0;
+        }
+        return inside ? INSIDE : CLIPPED;
+
+    }
+
+    /**
+     * Get the depth of the center of a model's bounding sphere in camera
+     * coordinates.
+     *
+     * @param camera
+     *            the camera
+     * @param scene
+     *            the scene the model is in
+     * @param model
+     *            the index of the model
+     * @return the distance of the model's center along the view direction
+     */
+    float viewDepth(final Camera camera, final SceneSnapshot scene, final int model) {
+        final Mesh.Frame frame = scene.frames[model];
+        if (frame == null) {
+            return 0;
+        }
+        boundsMatrix.resetToIdentity();
+        boundsMatrix.multiplySelf(camera.getMatrix());
+        boundsMatrix.multiplySelf(scene.matrices[model]);
+        return transformZ(boundsMatrix.data, frame.centerX, frame.centerY, frame.centerZ);
+    }
+
+    /**
+     * Clear the buffers for a new frame: the colors to
+     * <code>background</code> and the depths to 0.  With partial clearing,
+     * only the tiles drawn on since they were last cleared are touched.
+     *
+     * @param background the color to clear to, including alpha
+     * @param pool       the pool to clear on in parallel, or
+     *                   <code>null</code>
+     */
+    void clear(final int background, final ForkJoinPool pool) {
+        clear(background, true, pool);
+    }
+
+    /**
+     * Clear the depths for a new frame, leaving the colors as they are.
+     *
+     * @see #clear(int, ForkJoinPool)
+     */
+    void clearDepth(final ForkJoinPool pool) {
+        clear(0, false, pool);
+    }
+
+    private void clear(final int background, final boolean colors, final ForkJoinPool pool) {
+        if (occlusion != null) {
+            occlusion.clear();
+        }
+        if (dirtyTiles == null && pool == null) {
+            if (colors) {
+                Util.fill(pixels, background);
+            }
+            Util.fill(zbuf, 0);
+            return;
+        }
+        Parallel.forEach(pool, tileCols * tileRows, tile -> {
+            if (dirtyTiles == null || dirtyTiles[tile]) {
+                final int x0 = (tile % tileCols) << TileBinner.TILE_SHIFT;
+                final int y0 = (tile / tileCols) << TileBinner.TILE_SHIFT;
+                final int x1 = Math.min(x0 + TileBinner.TILE_SIZE, width);
+                final int y1 = Math.min(y0 + TileBinner.TILE_SIZE, height);
+                for (int row = y0 * width; row < y1 * width; row += width) {
+                    if (colors) {
+                        Arrays.fill(pixels, row + x0, row + x1, background);
+                    }
+                    Arrays.fill(zbuf, row + x0, row + x1, 0);
+                }
+                if (dirtyTiles != null) {
+                    dirtyTiles[tile] = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Note that a triangle record may have drawn inside a clipping
+     * rectangle, so the tiles it overlaps get cleared next time.
+     */
+    private void markDirty(final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+        // Widened by a pixel, as in TileBinner.add
+        final float ax = tri[off + X], bx = tri[off + VERTEX_STRIDE + X], cx = tri[off + 2 * VERTEX_STRIDE + X];
+        final int x0 = Math.max((int) (Math.min(ax, Math.min(bx, cx)) - 1), clipX0);
+        final int x1 = Math.min((int) (Math.max(ax, Math.max(bx, cx)) + 1), clipX1 - 1);
+        final int y0 = Math.max((int) (tri[off + Y] - 1), clipY0);
+        final int y1 = Math.min((int) (tri[off + 2 * VERTEX_STRIDE + Y] + 1), clipY1 - 1);
+        if (x0 > x1 || y0 > y1) {
+            return;
+        }
+        for (int ty = y0 >> TileBinner.TILE_SHIFT; ty <= y1 >> TileBinner.TILE_SHIFT; ++ty) {
+            for (int tx = x0 >> TileBinner.TILE_SHIFT; tx <= x1 >> TileBinner.TILE_SHIFT; ++tx) {
+                dirtyTiles[ty * tileCols + tx] = true;
+            }
+        }
+    }
+
+    /**
+     * Draw into other pixels from now on, such as the next image of a swap
+     * chain.  Nothing is known of what they hold, so with partial clearing,
+     * the next clear clears all of them.
+     *
+     * @param pixels the pixels to draw into, as large as the ones before
+     */
+    void setPixels(final int[] pixels) {
+        if (pixels != this.pixels) {
+            this.pixels = pixels;
+            if (dirtyTiles != null) {
+                Arrays.fill(dirtyTiles, true);
+            }
+        }
+    }
+
+    /**
+     * Note that every tile another renderer of the same size has drawn on
+     * since it was last cleared has been drawn on here too, such as when its
+     * pixels are copied over.
+     */
+    void markDirty(final Renderer other) {
+        if (dirtyTiles != null) {
+            for (int i = 0; i < dirtyTiles.length; ++i) {
+                dirtyTiles[i] |= other.dirtyTiles[i];
+            }
+        }
+    }
+
+    /**
+     * Determine whether a model is hidden behind what has already been drawn,
+     * by testing its bounding box on screen.
+     *
+     * @param camera
+     *            the camera
+     * @param matrix
+     *            the model's transformation
+     * @param frame
+     *            the model's current frame
+     * @return true if none of the model's pixels could pass the depth test
+     */
+    private boolean isOccluded(final Camera camera, final Matrix matrix, final Mesh.Frame frame) {
+
+        boundsMatrix.resetToIdentity();
+        boundsMatrix.multiplySelf(camera.getMatrix());
+        boundsMatrix.multiplySelf(matrix);
+        final float[][] m = boundsMatrix.data;
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = 0;
+        for (int i = 0; i < 8; ++i) {
+            final float x = (i & 1) == 0 ? frame.minX : frame.maxX;
+            final float y = (i & 2) == 0 ? frame.minY : frame.maxY;
+            final float z = (i & 4) == 0 ? frame.minZ : frame.maxZ;
+            final float cz = transformZ(m, x, y, z);
+            if (cz < NEAR) {
+                return false; // its clipped triangles can reach anywhere
+            }
+            final float invZ = 1 / cz;
+            final float sx = transformX(m, x, y, z) * invZ * fudgeScaling + halfwidth;
+            final float sy = transformY(m, x, y, z) * invZ * fudgeScaling + halfheight;
+            minX = Math.min(minX, sx);
+            minY = Math.min(minY, sy);
+            maxX = Math.max(maxX, sx);
+            maxY = Math.max(maxY, sy);
+            maxZ = Math.max(maxZ, invZ);
+        }
+        return occlusion.isOccluded((int) minX - 1, (int) minY - 1, (int) maxX + 1, (int) maxY + 1, maxZ);
+
+    }
+
+    private static float transformX(final float[][] m, final float x, final float y, final float z) {
+        return (m[0][0] * x) + (m[0][1] * y) + (m[0][2] * z) + (m[0][3]);
+    }
+
+    private static float transformY(final float[][] m, final float x, final float y, final float z) {
+        return (m[1][0] * x) + (m[1][1] * y) + (m[1][2] * z) + (m[1][3]);
+    }
+
+    private static float transformZ(final float[][] m, final float x, final float y, final float z) {
+        return (m[2][0] * x) + (m[2][1] * y) + (m[2][2] * z) + (m[2][3]);
+    }
+
+    /**
+     * Render some of the triangles of a model to the specified camera.  If
+     * <code>bins</code> is not <code>null</code>, the triangles are only set
+     * up and added to the bins; they get drawn by {@link
+     * TileBinner#render(Renderer, java.util.concurrent.ForkJoinPool)}.
+     *
+     * <p>Renderers do not share any scratch state, so different renderers may
+     * render the same model at the same time.
+     *
+     * @param camera
+     *            the camera
+     * @param scene
+     *            the scene the model is in
+     * @param model
+     *            the index of the model to render
+     * @param id
+     *            the ID to mark the model's pixels with (see
+     *            {@link RenderSettings#setPicking(boolean)})
+     * @param first
+     *            the index of the first triangle to render
+     * @param end
+     *            one past the index of the last triangle to render
+     * @param clipped
+     *            false if {@link #testFrustum(Camera, SceneSnapshot, int)}
+     *            found the model entirely in view, which skips per-triangle
+     *            visibility checks
+     * @param bins
+     *            the bins to collect triangles in, or <code>null</code> to
+     *            draw them right away
+     */
+    void render(final Camera camera, final SceneSnapshot scene, final int model, final int id,
+            final int first, final int end, final boolean clipped, final TileBinner bins) {
+        final Mesh.Frame frame = scene.frames[model];
+        if (frame != null) {
+            render(camera, scene.models[model].mesh, frame, scene.matrices[model], scene.materials[model],
+                    id, first, end, clipped, bins);
+        }
+    }
+
+    /**
+     * Render some of the instances of a batch to the specified camera,
+     * skipping those that are out of view.
+     *
+     * @param camera
+     *            the camera
+     * @param batch
+     *            the batch to render
+     * @param id
+     *            the ID to mark the instances' pixels with
+     * @param first
+     *            the index of the first instance to render
+     * @param end
+     *            one past the index of the last instance to render
+     * @param bins
+     *            the bins to collect triangles in, or <code>null</code> to
+     *            draw them right away
+     */
+    void render(final Camera camera, final InstanceBatch batch, final int id, final int first,
+            final int end, final TileBinner bins) {
+
+        final Mesh.Frame frame = batch.frameData();
+        if (frame == null) {
+            return;
+        }
+
+        final float[] transforms = batch.transforms();
+        int culled = 0;
+        for (int i = first; i < end; ++i) {
+            if (!render(camera, batch.mesh, frame, transforms, i * InstanceBatch.TRANSFORM_STRIDE,
+                    batch.material(i), id, bins)) {
+                ++culled;
+            }
+        }
+        statistics.instances.add(end - first - culled);
+        statistics.culledInstances.add(culled);
+
+    }
+
+    /**
+     * Render a whole model whose transformation is packed into an array, as
+     * {@link InstanceBatch} does, unless it is out of view.
+     *
+     * @param camera
+     *            the camera
+     * @param mesh
+     *            the model's mesh
+     * @param frame
+     *            the frame of the mesh to render
+     * @param transforms
+     *            the array holding the transformation
+     * @param offset
+     *            the offset of the transformation in <code>transforms</code>
+     * @param material
+     *            the model's material
+     * @param id
+     *            the ID to mark the model's pixels with
+     * @param bins
+     *            the bins to collect triangles in, or <code>null</code> to
+     *            draw them right away
+     * @return false if the model was out of view
+     */
+    boolean render(final Camera camera, final Mesh mesh, final Mesh.Frame frame, final float[] transforms,
+            final int offset, final Material material, final int id, final TileBinner bins) {
+        final float[][] m = packedMatrix.data;
+        for (int row = 0; row < 3; ++row) {
+            System.arraycopy(transforms, offset + row * 4, m[row], 0, 4);
+        }
+        final int result = testFrustum(camera, packedMatrix, frame);
+        if (result == OUTSIDE) {
+            return false;
+        }
+        render(camera, mesh, frame, packedMatrix, material, id, 0, mesh.numTriangles,
+                result == CLIPPED, bins);
+        return true;
+    }
+
+    private void render(final Camera camera, final Mesh mesh, final Mesh.Frame frame, final Matrix matrix,
+            final Material material, final int id, final int first, final int end,
+            final boolean clipped, final TileBinner bins) {
+
+        // The occlusion buffer only knows about triangles drawn right away
+        if (bins == null && occlusion != null && isOccluded(camera, matrix, frame)) {
+            return;
+        }
+
+        final boolean flat = (material.mode & Material.SMOOTH) == 0;
+        final float[] tri = tmpTriangle;
+        final Vector n = tmpNormal;
+        final float[] pos = frame.positions;
+        final float[] faceNormals = frame.faceNormals(mesh);
+        final int[] indices = mesh.indices;
+        projectAllVertices(camera, matrix, frame);
+
+        // Camera position in object coordinates
+        inverseMatrix.set(projectionMatrix);
+        inverseMatrix.invert();
+        final float eyeX = inverseMatrix.data[0][3];
+        final float eyeY = inverseMatrix.data[1][3];
+        final float eyeZ = inverseMatrix.data[2][3];
+
+        for (int i = first; i < end; i++) {
+
+            final int a = indices[i * 3] * 3;
+            final float nx = faceNormals[i * 3];
+            final float ny = faceNormals[i * 3 + 1];
+            final float nz = faceNormals[i * 3 + 2];
+
+            // back-face culling: only render the side facing the camera
+            if (nx * (pos[a] - eyeX) + ny * (pos[a + 1] - eyeY) + nz * (pos[a + 2] - eyeZ) <= 0) {
+                final int visibility = clipped
+                        ? classifyTriangle(a, indices[i * 3 + 1] * 3, indices[i * 3 + 2] * 3)
+                        : DRAW;
+                if (visibility == CULL) {
+                    continue;
+                }
+                if (flat) {
+                    n.set(nx, ny, nz);
+                    matrix.multiplyDirection(n, n); // put normal into world coords
+                }
+                if (visibility == CLIP) {
+                    clipTriangle(mesh, id, frame, i, n, material, bins);
+                } else {
+                    setupTriangle(mesh, frame, i, n, material, tri);
+                    emit(id, material, tri, bins);
+                }
+            }
+
+        }
+
+    }
+
+    private void emit(final int id, final Material material, final float[] tri, final TileBinner bins) {
+        if (bins == null) {
+            renderTriangle(id, material, tri, 0, 0, 0, width, height);
+        } else {
+            bins.add(tri, material, id);
+        }
+    }
+
+    /**
+     * Determine how a triangle of a model that crosses the edge of the view
+     * must be drawn.
+     *
+     * @param a the offset of the first projected vertex
+     * @param b the offset of the second projected vertex
+     * @param c the offset of the third projected vertex
+     * @return {@link #CULL} if the triangle cannot cover any pixels,
+     *         {@link #CLIP} if it crosses the near plane or the guard band, or
+     *         {@link #DRAW} otherwise
+     */
+    private int classifyTriangle(final int a, final int b, final int c) {
+        final float[] proj = projected;
+
+        // In front of the near plane means 0 < 1/z <= 1/NEAR
+        final float maxZ = 1 / NEAR;
+        final boolean frontA = proj[a + 2] > 0 && proj[a + 2] <= maxZ;
+        final boolean frontB = proj[b + 2] > 0 && proj[b + 2] <= maxZ;
+        final boolean frontC = proj[c + 2] > 0 && proj[c + 2] <= maxZ;
+        if (!(frontA || frontB || frontC)) {
+            return CULL;
+        }
+        if (!(frontA && frontB && frontC)) {
+            return CLIP;
+        }
+
+        if ((proj[a] < 0 && proj[b] < 0 && proj[c] < 0)
+                || (proj[a] >= width && proj[b] >= width && proj[c] >= width)
+                || (proj[a + 1] < 0 && proj[b + 1] < 0 && proj[c + 1] < 0)
+                || (proj[a + 1] >= height && proj[b + 1] >= height && proj[c + 1] >= height)) {
+            return CULL;
+        }
+
+        final float minX = -GUARD_BAND, maxX = width + GUARD_BAND;
+        final float minY = -GUARD_BAND, maxY = height + GUARD_BAND;
+        if (proj[a] < minX || proj[b] < minX || proj[c] < minX
+                || proj[a] > maxX || proj[b] > maxX || proj[c] > maxX
+                || proj[a + 1] < minY || proj[b + 1] < minY || proj[c + 1] < minY
+                || proj[a + 1] > maxY || proj[b + 1] > maxY || proj[c + 1] > maxY) {
+            return CLIP;
+        }
+        return DRAW;
+    }
+
+    /**
+     * Set up and draw a triangle that crosses the near plane or the guard
+     * band.  The triangle is clipped against the near plane in camera
+     * coordinates, projected, clipped against the guard band in screen
+     * coordinates (where depth, light and texture coordinates are all linear),
+     * and the resulting polygon is drawn as a fan of triangles.
+     *
+     * <p>Inside the guard band, the rasterizer's clipping rectangle already
+     * limits the work to visible pixels; the guard band only keeps screen
+     * coordinates small enough to stay precise.
+     *
+     * @param mesh     the mesh the triangle belongs to
+     * @param id       the ID of the model
+     * @param frame    the current frame of the mesh
+     * @param t        the index of the triangle
+     * @param normal   the triangle normal in world coordinates (only used for
+     *                 flat shading)
+     * @param material the material of the triangle
+     * @param bins     the bins to collect triangles in, or <code>null</code>
+     */
+    private void clipTriangle(final Mesh mesh, final int id, final Mesh.Frame frame, final int t,
+            final Vector normal, final Material material, final TileBinner bins) {
+
+        final float[] pos = frame.positions;
+        final float[][] m = projectionMatrix.data;
+        final boolean smooth = (material.mode & Material.SMOOTH) != 0;
+        final boolean textured = (material.mode & Material.TEXTURED) != 0;
+        final float Kd = lightIntensity * material.diffuseValue;
+        final float Ka = lightAmbient * material.ambientValue;
+        final float flatLight = smooth ? 0 : Math.max(normal.dot(lightVector), 0) * (Kd - Ka) + Ka;
+        final float[] faceNormals = smooth ? frame.faceNormals(mesh) : null;
+        float[] in = clipBufferA, out = clipBufferB, swap;
+
+        // Camera-space vertices, with light & unscaled texture coordinates
+        for (int i = 0; i < 3; ++i) {
+            final int p = mesh.indices[t * 3 + i] * 3;
+            final int o = i * VERTEX_STRIDE;
+            in[o + X] = transformX(m, pos[p], pos[p + 1], pos[p + 2]);
+            in[o + Y] = transformY(m, pos[p], pos[p + 1], pos[p + 2]);
+            in[o + Z] = transformZ(m, pos[p], pos[p + 1], pos[p + 2]);
+            in[o + L] = smooth ? vertexLight(frame.normals, p, faceNormals, t * 3, Kd, Ka) : flatLight;
+            in[o + U] = textured ? mesh.uvs[t * 6 + i * 2] : 0;
+            in[o + V] = textured ? mesh.uvs[t * 6 + i * 2 + 1] : 0;
+        }
+        int n = clipPolygon(in, 3, out, 0, 0, 1, -NEAR);
+
+        // Project into the same record format setupTriangle produces
+        for (int i = 0; i < n; ++i) {
+            final int o = i * VERTEX_STRIDE;
+            final float projZ = 1.0f / out[o + Z];
+            in[o + X] = out[o + X] * fudgeScaling * projZ + halfwidth;
+            in[o + Y] = out[o + Y] * fudgeScaling * projZ + halfheight;
+            in[o + Z] = projZ;
+            in[o + L] = out[o + L];
+            in[o + U] = out[o + U] * projZ;
+            in[o + V] = out[o + V] * projZ;
+        }
+
+        n = clipPolygon(in, n, out, 1, 0, 0, GUARD_BAND);
+        n = clipPolygon(out, n, in, -1, 0, 0, width + GUARD_BAND);
+        n = clipPolygon(in, n, out, 0, 1, 0, GUARD_BAND);
+        n = clipPolygon(out, n, in, 0, -1, 0, height + GUARD_BAND);
+
+        final float[] tri = tmpTriangle;
+        for (int i = 1; i + 1 < n; ++i) {
+            sortTriangle(in, 0, i * VERTEX_STRIDE, (i + 1) * VERTEX_STRIDE, tri);
+            emit(id, material, tri, bins);
+        }
+
+    }
+
+    /**
+     * Clip a convex polygon against a plane, keeping the part where
+     * <code>px*X + py*Y + pz*Z + d &gt;= 0</code>.  All values of each vertex
+     * are interpolated linearly along the clipped edges.
+     *
+     * @param src the vertices of the polygon
+     * @param n   the number of vertices in <code>src</code>
+     * @param dst overwritten with the vertices of the clipped polygon
+     * @return the number of vertices in <code>dst</code>
+     */
+    private static int clipPolygon(final float[] src, final int n, final float[] dst,
+            final float px, final float py, final float pz, final float d) {
+        int count = 0;
+        for (int i = 0; i < n; ++i) {
+            final int s = i * VERTEX_STRIDE;
+            final int e = ((i + 1) % n) * VERTEX_STRIDE;
+            final float ds = px * src[s + X] + py * src[s + Y] + pz * src[s + Z] + d;
+            final float de = px * src[e + X] + py * src[e + Y] + pz * src[e + Z] + d;
+            if (ds >= 0) {
+                System.arraycopy(src, s, dst, count * VERTEX_STRIDE, VERTEX_STRIDE);
+                ++count;
+            }
+            if ((ds >= 0) != (de >= 0)) {
+                final float k = ds / (ds - de);
+                final int o = count * VERTEX_STRIDE;
+                for (int j = 0; j < VERTEX_STRIDE; ++j) {
+                    dst[o + j] = src[s + j] + (src[e + j] - src[s + j]) * k;
+                }
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copy three vertices into a triangle record, sorted by screen
+     * y-coordinate.
+     */
+    private static void sortTriangle(final float[] src, int a, int b, int c, final float[] out) {
+        int temp;
+        if (src[b + Y] < src[a + Y]) {
+            temp = a;
+            a = b;
+            b = temp;
+        }
+        if (src[c + Y] < src[b + Y]) {
+            temp = b;
+            b = c;
+            c = temp;
+        }
+        if (src[b + Y] < src[a + Y]) {
+            temp = a;
+            a = b;
+            b = temp;
+        }
+        System.arraycopy(src, a, out, 0, VERTEX_STRIDE);
+        System.arraycopy(src, b, out, VERTEX_STRIDE, VERTEX_STRIDE);
+        System.arraycopy(src, c, out, 2 * VERTEX_STRIDE, VERTEX_STRIDE);
+    }
+
+    /**
+     * Work out the light at a vertex for smooth shading, from its normal, or
+     * from the normal of its triangle if the vertex has none.
+     *
+     * @param normals     the vertex normals of the frame, or <code>null</code>
+     * @param p           the offset of the vertex
+     * @param faceNormals the triangle normals of the frame
+     * @param f           the offset of the triangle's normal
+     */
+    private float vertexLight(final float[] normals, final int p, final float[] faceNormals, final int f,
+            final float Kd, final float Ka) {
+        final Vector light = lightVector;
+        float[] n = normals;
+        int i = p;
+        if (n == null || (n[i] == 0 && n[i + 1] == 0 && n[i + 2] == 0)) {
+            n = faceNormals;
+            i = f;
+        }
+        return Math.max((n[i] * light.x) + (n[i + 1] * light.y) + (n[i + 2] * light.z), 0) * (Kd - Ka) + Ka;
+    }
+
+    /**
+     * Project all vertices into their correct screen coordinates. This function
+     * fills {@link #projected} with the screen x- and y-coordinates and the
+     * reciprocal depth of each vertex of the frame.
+     *
+     * @param camera the camera to project to
+     * @param matrix the transformation of the model whose vertices should be
+     *               projected
+     * @param frame  the current frame of the model
+     */
+    private void projectAllVertices(final Camera camera, final Matrix matrix, final Mesh.Frame frame) {
+        projectionMatrix.resetToIdentity();
+        projectionMatrix.multiplySelf(camera.getMatrix());
+        projectionMatrix.multiplySelf(matrix);
+
+        final float[][] m = projectionMatrix.data;
+        final float m00 = m[0][0], m01 = m[0][1], m02 = m[0][2], m03 = m[0][3];
+        final float m10 = m[1][0], m11 = m[1][1], m12 = m[1][2], m13 = m[1][3];
+        final float m20 = m[2][0], m21 = m[2][1], m22 = m[2][2], m23 = m[2][3];
+
+        final int l = frame.numVertices * 3;
+        if (projected.length < l) {
+            projected = new float[l];
+        }
+        final float[] proj = projected;
+        final float[] pos = frame.positions;
+
+        for (int i = 0; i < l; i += 3) {
+
+            // Transform to camera coordinates
+            final float x = pos[i], y = pos[i + 1], z = pos[i + 2];
+            final float cx = (m00 * x) + (m01 * y) + (m02 * z) + (m03);
+            final float cy = (m10 * x) + (m11 * y) + (m12 * z) + (m13);
+            final float cz = (m20 * x) + (m21 * y) + (m22 * z) + (m23);
+
+            // Calculate position on screen & depth from camera
+            // This bit performs the transformation from orthographic to
+            // perspective
+            final float projZ = 1.0f / cz;
+            proj[i] = cx * fudgeScaling * projZ + halfwidth;
+            proj[i + 1] = cy * fudgeScaling * projZ + halfheight;
+            proj[i + 2] = projZ;
+
+        }
+
+    }
+
+    /**
+     * Fill in the record for a triangle whose vertices have been projected.
+     *
+     * @param mesh     the mesh the triangle belongs to
+     * @param frame    the current frame of the mesh
+     * @param t        the index of the triangle
+     * @param normal   the triangle normal in world coordinates (only used for
+     *                 flat shading)
+     * @param material the material of the triangle
+     * @param out      overwritten with the triangle record
+     */
+    private void setupTriangle(final Mesh mesh, final Mesh.Frame frame, final int t,
+            final Vector normal, final Material material, final float[] out) {
+
+        // Offsets of the projected vertices & vertex texture coordinates
+        final float[] proj = projected;
+        int a = mesh.indices[t * 3] * 3;
+        int b = mesh.indices[t * 3 + 1] * 3;
+        int c = mesh.indices[t * 3 + 2] * 3;
+        int uva = t * 6;
+        int uvb = t * 6 + 2;
+        int uvc = t * 6 + 4;
+
+        int tempVertex;
+        int tempUV;
+
+        /*
+         * Sort vertices by projected y-coordinate; "a" on top, followed by "b"
+         * and then "c". This gives us two cases, where point "b" is either left
+         * or right of line "a-c".
+         */
+
+        if (proj[b + 1] < proj[a + 1]) {
+            tempVertex = a;
+            a = b;
+            b = tempVertex;
+            tempUV = uva;
+            uva = uvb;
+            uvb = tempUV;
+        }
+        if (proj[c + 1] < proj[b + 1]) {
+            tempVertex = b;
+            b = c;
+            c = tempVertex;
+            tempUV = uvb;
+            uvb = uvc;
+            uvc = tempUV;
+        }
+        if (proj[b + 1] < proj[a + 1]) {
+            tempVertex = a;
+            a = b;
+            b = tempVertex;
+            tempUV = uva;
+            uva = uvb;
+            uvb = tempUV;
+        }
+
+        final boolean smooth = (material.mode & Material.SMOOTH) != 0;
+        final boolean textured = (material.mode & Material.TEXTURED) != 0;
+        final float Kd = lightIntensity * material.diffuseValue;
+        final float Ka = lightAmbient * material.ambientValue;
+        final float flatLight = smooth ? 0 : Math.max(normal.dot(lightVector), 0) * (Kd - Ka) + Ka;
+        final float[] normals = frame.normals;
+        final float[] faceNormals = smooth ? frame.faceNormals(mesh) : null;
+        final float[] uvs = mesh.uvs;
+
+        for (int i = 0; i < 3; ++i) {
+            final int p = (i == 0) ? a : (i == 1) ? b : c;
+            final int uv = (i == 0) ? uva : (i == 1) ? uvb : uvc;
+            final int o = i * VERTEX_STRIDE;
+            final float projZ = proj[p + 2];
+            out[o + X] = proj[p];
+            out[o + Y] = proj[p + 1];
+            out[o + Z] = projZ;
+            out[o + L] = smooth ? vertexLight(normals, p, faceNormals, t * 3, Kd, Ka) : flatLight;
+            out[o + U] = textured ? uvs[uv] * projZ : 0;
+            out[o + V] = textured ? uvs[uv + 1] * projZ : 0;
+        }
+
+    }
+
+    /**
+     * Rasterize a triangle record, only touching pixels inside the given
+     * clipping rectangle.  The pixels a triangle produces do not depend on the
+     * clipping rectangle, so drawing a triangle piece by piece gives the same
+     * image as drawing it all at once.
+     *
+     * @param modelId  the ID of the model the triangle belongs to
+     * @param material the material of the triangle
+     * @param tri      the array holding the triangle record
+     * @param off      the offset of the triangle record in <code>tri</code>
+     * @param clipX0   the left edge of the clipping rectangle (inclusive)
+     * @param clipY0   the top edge of the clipping rectangle (inclusive)
+     * @param clipX1   the right edge of the clipping rectangle (exclusive)
+     * @param clipY1   the bottom edge of the clipping rectangle (exclusive)
+     */
+    void renderTriangle(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        if (occlusion != null && occlusion.isOccluded(tri, off, clipX0, clipY0, clipX1, clipY1)) {
+            return;
+        }
+
+        if (dirtyTiles != null) {
+            markDirty(tri, off, clipX0, clipY0, clipX1, clipY1);
+        }
+
+        if (halfSpace) {
+            rasterizeHalfSpace(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+        } else {
+            rasterizeScanline(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+        }
+
+        if (occlusion != null) {
+            occlusion.update(tri, off, clipX0, clipY0, clipX1, clipY1);
+        }
+
+    }
+
+    /**
+     * Rasterize a triangle record one scanline at a time, splitting it at the
+     * middle vertex.
+     *
+     * @see #renderTriangle
+     */
+    private void rasterizeScanline(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // See gen-renderer.py
+        switch(material.mode) {
+        case Material.FLAT:
+            scanlineFlat(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+            break;
+        case Material.SMOOTH:
+            scanlineSmooth(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+            break;
+        case Material.TEXTURED:
+            if (mipmapping && material.texture.isPowerOfTwo()) {
+                if (textureTiling) {
+                    if (subdivision > 1) {
+                        scanlineTexturedTiledSubdivided(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    } else {
+                        scanlineTexturedTiled(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    }
+                } else {
+                    if (subdivision > 1) {
+                        scanlineTexturedMipmappedSubdivided(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    } else {
+                        scanlineTexturedMipmapped(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    }
+                }
+            } else if (subdivision > 1) {
+                scanlineTexturedSubdivided(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+            } else {
+                scanlineTextured(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+            }
+            break;
+        case Material.SMOOTH_TEXTURED:
+            if (mipmapping && material.texture.isPowerOfTwo()) {
+                if (textureTiling) {
+                    if (subdivision > 1) {
+                        scanlineSmoothTexturedTiledSubdivided(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    } else {
+                        scanlineSmoothTexturedTiled(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    }
+                } else {
+                    if (subdivision > 1) {
+                        scanlineSmoothTexturedMipmappedSubdivided(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    } else {
+                        scanlineSmoothTexturedMipmapped(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    }
+                }
+            } else if (subdivision > 1) {
+                scanlineSmoothTexturedSubdivided(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+            } else {
+                scanlineSmoothTextured(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+            }
+            break;
+        }
+
+
+    }
+
+        private void scanlineFlat(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final Material.Shades shades = material.getShades(lightIntensity, lightAmbient);
+        final int[] shadeTable = shades.table;
+        final float lightScale = shades.scale;
+        final int lightMax = Material.SHADE_LEVELS - 1;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final int color = shadeTable[light];
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                if (spans != null && xend - xstart >= SpanShader.MIN_LENGTH) {
+                    shaded += spans.flat(zbuf, pixels, idbuf, modelId, row, xstart, xend, sx, sz, dz, color | ALPHA);
+                    continue;
+                }
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                if (spans != null && xend - xstart >= SpanShader.MIN_LENGTH) {
+                    shaded += spans.flat(zbuf, pixels, idbuf, modelId, row, xstart, xend, sx, sz, dz, color | ALPHA);
+                    continue;
+                }
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                if (spans != null && xend - xstart >= SpanShader.MIN_LENGTH) {
+                    shaded += spans.flat(zbuf, pixels, idbuf, modelId, row, xstart, xend, sx, sz, dz, color | ALPHA);
+                    continue;
+                }
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                if (spans != null && xend - xstart >= SpanShader.MIN_LENGTH) {
+                    shaded += spans.flat(zbuf, pixels, idbuf, modelId, row, xstart, xend, sx, sz, dz, color | ALPHA);
+                    continue;
+                }
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineSmooth(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final Material.Shades shades = material.getShades(lightIntensity, lightAmbient);
+        final int[] shadeTable = shades.table;
+        final float lightScale = shades.scale;
+        final int lightMax = Material.SHADE_LEVELS - 1;
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                if (spans != null && xend - xstart >= SpanShader.MIN_LENGTH) {
+                    shaded += spans.smooth(zbuf, pixels, idbuf, modelId, row, xstart, xend, sx, sz, dz, lightX, lightStart, lightStep, lightLow, lightHigh, shadeTable, ALPHA);
+                    continue;
+                }
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int color = shadeTable[light];
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                if (spans != null && xend - xstart >= SpanShader.MIN_LENGTH) {
+                    shaded += spans.smooth(zbuf, pixels, idbuf, modelId, row, xstart, xend, sx, sz, dz, lightX, lightStart, lightStep, lightLow, lightHigh, shadeTable, ALPHA);
+                    continue;
+                }
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int color = shadeTable[light];
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                if (spans != null && xend - xstart >= SpanShader.MIN_LENGTH) {
+                    shaded += spans.smooth(zbuf, pixels, idbuf, modelId, row, xstart, xend, sx, sz, dz, lightX, lightStart, lightStep, lightLow, lightHigh, shadeTable, ALPHA);
+                    continue;
+                }
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int color = shadeTable[light];
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                if (spans != null && xend - xstart >= SpanShader.MIN_LENGTH) {
+                    shaded += spans.smooth(zbuf, pixels, idbuf, modelId, row, xstart, xend, sx, sz, dz, lightX, lightStart, lightStep, lightLow, lightHigh, shadeTable, ALPHA);
+                    continue;
+                }
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int color = shadeTable[light];
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineTextured(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final float recip = 1/z;
+                        final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final float recip = 1/z;
+                        final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final float recip = 1/z;
+                        final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final float recip = 1/z;
+                        final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineTexturedSubdivided(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                            final int base_color = texture.pixels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                            final int base_color = texture.pixels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                            final int base_color = texture.pixels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                            final int base_color = texture.pixels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineTexturedMipmapped(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineTexturedMipmappedSubdivided(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = (texY << ushift) | texX;
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = (texY << ushift) | texX;
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = (texY << ushift) | texX;
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = (texY << ushift) | texX;
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineTexturedTiled(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getTiledLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineTexturedTiledSubdivided(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getTiledLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineSmoothTextured(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final float recip = 1/z;
+                        final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final float recip = 1/z;
+                        final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final float recip = 1/z;
+                        final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final float recip = 1/z;
+                        final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineSmoothTexturedSubdivided(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                            final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                            final int base_color = texture.pixels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                            final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                            final int base_color = texture.pixels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                            final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                            final int base_color = texture.pixels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                            final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                            final int base_color = texture.pixels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineSmoothTexturedMipmapped(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineSmoothTexturedMipmappedSubdivided(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = (texY << ushift) | texX;
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = (texY << ushift) | texX;
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = (texY << ushift) | texX;
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = (texY << ushift) | texX;
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineSmoothTexturedTiled(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getTiledLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        final float texu = stexu + span * dtexu;
+                        final float texv = stexv + span * dtexv;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final float recip = 1/z;
+                        final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                        final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        zbuf[index] = z;
+                        pixels[index] = color | ALPHA;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                        ++shaded;
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineSmoothTexturedTiledSubdivided(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getTiledLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        if (zbuf[index] < z) {
+                            final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                            final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                            final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                            final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void scanlineVisibility(final int modelId, final float[] tri, final int off, final int id,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        // Pixels covered
+        int fragments = 0;
+
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        int y = Math.max(ay, clipY0);
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        zbuf[index] = z;
+                        pixels[index] = id;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        zbuf[index] = z;
+                        pixels[index] = id;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            int yend = Math.min(by, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        zbuf[index] = z;
+                        pixels[index] = id;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                    }
+                }
+            }
+            yend = Math.min(cy, clipY1);
+            for (; y < yend; ++y) {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final int row = y * width;
+                final int xstart = Math.max((int) sx, clipX0), xend = Math.min((int) ex, clipX1);
+                fragments += Math.max(xend - xstart, 0);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    if (zbuf[index] < z) {
+                        zbuf[index] = z;
+                        pixels[index] = id;
+                        if (idbuf != null) {
+                            idbuf[index] = modelId;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+    }
+
+    private void shadeFlat(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final Material.Shades shades = material.getShades(lightIntensity, lightAmbient);
+        final int[] shadeTable = shades.table;
+        final float lightScale = shades.scale;
+        final int lightMax = Material.SHADE_LEVELS - 1;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final int color = shadeTable[light];
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        }
+    }
+
+    private void shadeSmooth(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final Material.Shades shades = material.getShades(lightIntensity, lightAmbient);
+        final int[] shadeTable = shades.table;
+        final float lightScale = shades.scale;
+        final int lightMax = Material.SHADE_LEVELS - 1;
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final int color = shadeTable[light];
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final int color = shadeTable[light];
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final int color = shadeTable[light];
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final int color = shadeTable[light];
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        }
+    }
+
+    private void shadeTextured(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final float recip = 1/z;
+                    final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                    final int base_color = texture.pixels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final float recip = 1/z;
+                    final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                    final int base_color = texture.pixels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final float recip = 1/z;
+                    final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                    final int base_color = texture.pixels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final float recip = 1/z;
+                    final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                    final int base_color = texture.pixels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        }
+    }
+
+    private void shadeTexturedSubdivided(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            }
+        }
+    }
+
+    private void shadeTexturedMipmapped(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = (texY << ushift) | texX;
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = (texY << ushift) | texX;
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = (texY << ushift) | texX;
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = (texY << ushift) | texX;
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        }
+    }
+
+    private void shadeTexturedMipmappedSubdivided(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            }
+        }
+    }
+
+    private void shadeTexturedTiled(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getTiledLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        }
+    }
+
+    private void shadeTexturedTiledSubdivided(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getTiledLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            }
+        }
+    }
+
+    private void shadeSmoothTextured(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final float recip = 1/z;
+                    final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                    final int base_color = texture.pixels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final float recip = 1/z;
+                    final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                    final int base_color = texture.pixels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final float recip = 1/z;
+                    final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                    final int base_color = texture.pixels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final float recip = 1/z;
+                    final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                    final int base_color = texture.pixels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        }
+    }
+
+    private void shadeSmoothTexturedSubdivided(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = Util.clamp((stexu + span0 * dtexu) * recip0, 0f, 1f) * texXMax;
+                    final float texY0 = Util.clamp((stexv + span0 * dtexv) * recip0, 0f, 1f) * texYMax;
+                    final float dtexX = (Util.clamp((stexu + span1 * dtexu) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                    final float dtexY = (Util.clamp((stexv + span1 * dtexv) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                        final int base_color = texture.pixels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            }
+        }
+    }
+
+    private void shadeSmoothTexturedMipmapped(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = (texY << ushift) | texX;
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = (texY << ushift) | texX;
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = (texY << ushift) | texX;
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = (texY << ushift) | texX;
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        }
+    }
+
+    private void shadeSmoothTexturedMipmappedSubdivided(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = (texY << ushift) | texX;
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            }
+        }
+    }
+
+    private void shadeSmoothTexturedTiled(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getTiledLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend; ++x) {
+                    final int index = row + x;
+                    final float span = Math.max(x - sx, 0);
+                    final float z = sz + span * dz;
+                    final float texu = stexu + span * dtexu;
+                    final float texv = stexv + span * dtexv;
+                    final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                    final float recip = 1/z;
+                    final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                    final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                    final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                    final int base_color = texels[tex_index];
+                    final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                    pixels[index] = color | ALPHA;
+                }
+            }
+        }
+    }
+
+    private void shadeSmoothTexturedTiledSubdivided(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // Offsets of the vertex records
+        final int a = off;
+        final int b = off + VERTEX_STRIDE;
+        final int c = off + 2 * VERTEX_STRIDE;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getTiledLevels();
+        final float ax = tri[a + X];
+        final int ay = (int) tri[a + Y];
+        final float az = tri[a + Z];
+        final float alightAmt = tri[a + L];
+        final float atexu = tri[a + U];
+        final float atexv = tri[a + V];
+        final float bx = tri[b + X];
+        final int by = (int) tri[b + Y];
+        final float bz = tri[b + Z];
+        final float blightAmt = tri[b + L];
+        final float btexu = tri[b + U];
+        final float btexv = tri[b + V];
+        final float cx = tri[c + X];
+        final int cy = (int) tri[c + Y];
+        final float cz = tri[c + Z];
+        final float clightAmt = tri[c + L];
+        final float ctexu = tri[c + U];
+        final float ctexv = tri[c + V];
+        final float dx_ab = (ay == by) ? (bx-ax) : ((ax-bx) / (ay-by));
+        final float dx_ac = (ay == cy) ? (cx-ax) : ((ax-cx) / (ay-cy));
+        final float dx_bc = (by == cy) ? (cx-bx) : ((bx-cx) / (by-cy));
+        final float dz_ab = (ay == by) ? (bz-az) : ((az-bz) / (ay-by));
+        final float dz_ac = (ay == cy) ? (cz-az) : ((az-cz) / (ay-cy));
+        final float dz_bc = (by == cy) ? (cz-bz) : ((bz-cz) / (by-cy));
+        final float dlightAmt_ab = (ay == by) ? (blightAmt-alightAmt) : ((alightAmt-blightAmt) / (ay-by));
+        final float dlightAmt_ac = (ay == cy) ? (clightAmt-alightAmt) : ((alightAmt-clightAmt) / (ay-cy));
+        final float dlightAmt_bc = (by == cy) ? (clightAmt-blightAmt) : ((blightAmt-clightAmt) / (by-cy));
+        final float dtexu_ab = (ay == by) ? (btexu-atexu) : ((atexu-btexu) / (ay-by));
+        final float dtexu_ac = (ay == cy) ? (ctexu-atexu) : ((atexu-ctexu) / (ay-cy));
+        final float dtexu_bc = (by == cy) ? (ctexu-btexu) : ((btexu-ctexu) / (by-cy));
+        final float dtexv_ab = (ay == by) ? (btexv-atexv) : ((atexv-btexv) / (ay-by));
+        final float dtexv_ac = (ay == cy) ? (ctexv-atexv) : ((atexv-ctexv) / (ay-cy));
+        final float dtexv_bc = (by == cy) ? (ctexv-btexv) : ((btexv-ctexv) / (by-cy));
+        if (dx_ab > dx_ac) { // case 1: point b is right of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = ax + (y - ay) * dx_ab;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = az + (y - ay) * dz_ab;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = atexu + (y - ay) * dtexu_ab;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = atexv + (y - ay) * dtexv_ab;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            } else {
+                final float sx = ax + (y - ay) * dx_ac;
+                final float ex = bx + (y - by) * dx_bc;
+                final float sz = az + (y - ay) * dz_ac;
+                final float ez = bz + (y - by) * dz_bc;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float elightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float stexu = atexu + (y - ay) * dtexu_ac;
+                final float etexu = btexu + (y - by) * dtexu_bc;
+                final float stexv = atexv + (y - ay) * dtexv_ac;
+                final float etexv = btexv + (y - by) * dtexv_bc;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            }
+        } else { // case 2: point b is left of line a-c
+            if (y < by) {
+                final float sx = ax + (y - ay) * dx_ab;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = az + (y - ay) * dz_ab;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = alightAmt + (y - ay) * dlightAmt_ab;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = atexu + (y - ay) * dtexu_ab;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = atexv + (y - ay) * dtexv_ab;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            } else {
+                final float sx = bx + (y - by) * dx_bc;
+                final float ex = ax + (y - ay) * dx_ac;
+                final float sz = bz + (y - by) * dz_bc;
+                final float ez = az + (y - ay) * dz_ac;
+                final float slightAmt = blightAmt + (y - by) * dlightAmt_bc;
+                final float elightAmt = alightAmt + (y - ay) * dlightAmt_ac;
+                final float stexu = btexu + (y - by) * dtexu_bc;
+                final float etexu = atexu + (y - ay) * dtexu_ac;
+                final float stexv = btexv + (y - by) * dtexv_bc;
+                final float etexv = atexv + (y - ay) * dtexv_ac;
+                final float dz = (sz - ez) / (sx - ex);
+                final float dlightAmt = (slightAmt - elightAmt) / (sx - ex);
+                final float dtexu = (stexu - etexu) / (sx - ex);
+                final float dtexv = (stexv - etexv) / (sx - ex);
+                final int row = y * width;
+                final int xstart = x0, xend = x1;
+                final int lightX = (int) sx;
+                final int lightStart = (int) ((slightAmt + (lightX - sx) * dlightAmt) * lightScale * LIGHT_STEP_ONE) + LIGHT_STEP_ONE / 2;
+                final int lightStep = (int) (dlightAmt * lightScale * LIGHT_STEP_ONE);
+                final int slight = Math.min(Math.max((int) (slightAmt * lightScale + 0.5f), 0), lightMax), elight = Math.min(Math.max((int) (elightAmt * lightScale + 0.5f), 0), lightMax);
+                final int lightLow = Math.min(slight, elight), lightHigh = Math.max(slight, elight);
+                final float mid = (ex - sx) * 0.5f;
+                final int level = mipLevel(texture, stexu + mid * dtexu, stexv + mid * dtexv, sz + mid * dz,
+                        dtexu, dtexv, dz, dtexu_ac - dx_ac * dtexu, dtexv_ac - dx_ac * dtexv, dz_ac - dx_ac * dz);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int x = xstart; x < xend;) {
+                    final int segment = x & ~(subdivision - 1);
+                    final int s0 = Math.max(segment, (int) sx), s1 = Math.min(segment + subdivision, (int) ex);
+                    final float span0 = Math.max(s0 - sx, 0), span1 = Math.max(s1 - sx, 0);
+                    final float recip0 = 1 / (sz + span0 * dz), recip1 = 1 / (sz + span1 * dz);
+                    final float texX0 = (stexu + span0 * dtexu) * recip0 * texWidth;
+                    final float texY0 = (stexv + span0 * dtexv) * recip0 * texHeight;
+                    final float dtexX = ((stexu + span1 * dtexu) * recip1 * texWidth - texX0) / (s1 - s0);
+                    final float dtexY = ((stexv + span1 * dtexv) * recip1 * texHeight - texY0) / (s1 - s0);
+                    for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                        final int index = row + x;
+                        final float span = Math.max(x - sx, 0);
+                        final float z = sz + span * dz;
+                        final int light = Math.min(Math.max((lightStart + (x - lightX) * lightStep) >> LIGHT_STEP_BITS, lightLow), lightHigh);
+                        final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                        final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                        final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                        final int base_color = texels[tex_index];
+                        final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                        pixels[index] = color | ALPHA;
+                    }
+                }
+            }
+        }
+    }
+
+
+
+    /**
+     * Rasterize only the depth of a triangle record, for deferred shading.
+     * Each pixel that passes the depth test gets the triangle's number in
+     * place of a color, for {@link #shadeRows} to look the triangle up by.
+     *
+     * @param modelId the ID of the model the triangle belongs to
+     * @param id      the number of the triangle record
+     * @see #renderTriangle
+     */
+    void renderVisibility(final int modelId, final float[] tri, final int off, final int id,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        if (occlusion != null && occlusion.isOccluded(tri, off, clipX0, clipY0, clipX1, clipY1)) {
+            return;
+        }
+
+        if (dirtyTiles != null) {
+            markDirty(tri, off, clipX0, clipY0, clipX1, clipY1);
+        }
+
+        scanlineVisibility(modelId, tri, off, id, clipX0, clipY0, clipX1, clipY1);
+
+        if (occlusion != null) {
+            occlusion.update(tri, off, clipX0, clipY0, clipX1, clipY1);
+        }
+
+    }
+
+    /**
+     * Shade the pixels of some rows left visible by {@link #renderVisibility},
+     * replacing each triangle number with the color the triangle has there.
+     * A pixel gets exactly the color {@link #renderTriangle} would have given
+     * it.  Pixels nothing was drawn on still have a depth of 0, and are left
+     * alone.
+     *
+     * @param triangles the triangle records, numbered by their offset
+     *                  divided by {@link #TRIANGLE_STRIDE}
+     * @param materials the material of each triangle record
+     * @param y0        the first row (inclusive)
+     * @param y1        the last row (exclusive)
+     */
+    void shadeRows(final float[] triangles, final Material[] materials, final int y0, final int y1) {
+        int shaded = 0;
+        for (int y = y0; y < y1; ++y) {
+            final int row = y * width;
+            int x = 0;
+            while (x < width) {
+                if (zbuf[row + x] == 0) {
+                    ++x;
+                    continue;
+                }
+                // Shade the run of pixels covered by the same triangle
+                final int id = pixels[row + x];
+                int end = x + 1;
+                while (end < width && pixels[row + end] == id && zbuf[row + end] != 0) {
+                    ++end;
+                }
+                shadeSpan(materials[id], triangles, id * TRIANGLE_STRIDE, y, x, end);
+                shaded += end - x;
+                x = end;
+            }
+        }
+        statistics.shadedFragments.add(shaded);
+    }
+
+    /**
+     * Shade pixels <code>x0</code> to <code>x1</code> (exclusive) of row
+     * <code>y</code>, which the triangle record covers.
+     */
+    private void shadeSpan(final Material material, final float[] tri, final int off,
+            final int y, final int x0, final int x1) {
+
+        // See gen-renderer.py
+        switch(material.mode) {
+        case Material.FLAT:
+            shadeFlat(material, tri, off, y, x0, x1);
+            break;
+        case Material.SMOOTH:
+            shadeSmooth(material, tri, off, y, x0, x1);
+            break;
+        case Material.TEXTURED:
+            if (mipmapping && material.texture.isPowerOfTwo()) {
+                if (textureTiling) {
+                    if (subdivision > 1) {
+                        shadeTexturedTiledSubdivided(material, tri, off, y, x0, x1);
+                    } else {
+                        shadeTexturedTiled(material, tri, off, y, x0, x1);
+                    }
+                } else {
+                    if (subdivision > 1) {
+                        shadeTexturedMipmappedSubdivided(material, tri, off, y, x0, x1);
+                    } else {
+                        shadeTexturedMipmapped(material, tri, off, y, x0, x1);
+                    }
+                }
+            } else if (subdivision > 1) {
+                shadeTexturedSubdivided(material, tri, off, y, x0, x1);
+            } else {
+                shadeTextured(material, tri, off, y, x0, x1);
+            }
+            break;
+        case Material.SMOOTH_TEXTURED:
+            if (mipmapping && material.texture.isPowerOfTwo()) {
+                if (textureTiling) {
+                    if (subdivision > 1) {
+                        shadeSmoothTexturedTiledSubdivided(material, tri, off, y, x0, x1);
+                    } else {
+                        shadeSmoothTexturedTiled(material, tri, off, y, x0, x1);
+                    }
+                } else {
+                    if (subdivision > 1) {
+                        shadeSmoothTexturedMipmappedSubdivided(material, tri, off, y, x0, x1);
+                    } else {
+                        shadeSmoothTexturedMipmapped(material, tri, off, y, x0, x1);
+                    }
+                }
+            } else if (subdivision > 1) {
+                shadeSmoothTexturedSubdivided(material, tri, off, y, x0, x1);
+            } else {
+                shadeSmoothTextured(material, tri, off, y, x0, x1);
+            }
+            break;
+        }
+
+
+    }
+
+    /**
+     * Rasterize a triangle record by testing pixel centers against its edges
+     * in fixed point, a block of pixels at a time.  A pixel center exactly on
+     * an edge shared by two triangles is drawn by only one of them.
+     *
+     * @see #renderTriangle
+     */
+    private void rasterizeHalfSpace(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // See gen-renderer.py
+        switch(material.mode) {
+        case Material.FLAT:
+            halfSpaceFlat(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+            break;
+        case Material.SMOOTH:
+            halfSpaceSmooth(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+            break;
+        case Material.TEXTURED:
+            if (mipmapping && material.texture.isPowerOfTwo()) {
+                if (textureTiling) {
+                    if (subdivision > 1) {
+                        halfSpaceTexturedTiledSubdivided(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    } else {
+                        halfSpaceTexturedTiled(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    }
+                } else {
+                    if (subdivision > 1) {
+                        halfSpaceTexturedMipmappedSubdivided(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    } else {
+                        halfSpaceTexturedMipmapped(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    }
+                }
+            } else if (subdivision > 1) {
+                halfSpaceTexturedSubdivided(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+            } else {
+                halfSpaceTextured(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+            }
+            break;
+        case Material.SMOOTH_TEXTURED:
+            if (mipmapping && material.texture.isPowerOfTwo()) {
+                if (textureTiling) {
+                    if (subdivision > 1) {
+                        halfSpaceSmoothTexturedTiledSubdivided(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    } else {
+                        halfSpaceSmoothTexturedTiled(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    }
+                } else {
+                    if (subdivision > 1) {
+                        halfSpaceSmoothTexturedMipmappedSubdivided(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    } else {
+                        halfSpaceSmoothTexturedMipmapped(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+                    }
+                }
+            } else if (subdivision > 1) {
+                halfSpaceSmoothTexturedSubdivided(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+            } else {
+                halfSpaceSmoothTextured(modelId, material, tri, off, clipX0, clipY0, clipX1, clipY1);
+            }
+            break;
+        }
+
+
+    }
+
+        private void halfSpaceFlat(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final Material.Shades shades = material.getShades(lightIntensity, lightAmbient);
+        final int[] shadeTable = shades.table;
+        final float lightScale = shades.scale;
+        final int lightMax = Material.SHADE_LEVELS - 1;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final int color = shadeTable[light];
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    for (int x = xstart; x < xend; ++x) {
+                        if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                            continue;
+                        }
+                        ++fragments;
+                        final int index = row + x;
+                        final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                        if (zbuf[index] < z) {
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceSmooth(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final Material.Shades shades = material.getShades(lightIntensity, lightAmbient);
+        final int[] shadeTable = shades.table;
+        final float lightScale = shades.scale;
+        final int lightMax = Material.SHADE_LEVELS - 1;
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float lightAmt0 = tri[v0 + L], lightAmt1 = tri[v1 + L], lightAmt2 = tri[v2 + L];
+        final float dlightAmtdx = ((lightAmt1 - lightAmt0) * ey2 - (lightAmt2 - lightAmt0) * ey1) * invArea;
+        final float dlightAmtdy = ((lightAmt2 - lightAmt0) * ex1 - (lightAmt1 - lightAmt0) * ex2) * invArea;
+        final float lightAmt00 = lightAmt0 + (0.5f - fx0) * dlightAmtdx + (0.5f - fy0) * dlightAmtdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float lightAmty = lightAmt00 + y * dlightAmtdy;
+                    for (int x = xstart; x < xend; ++x) {
+                        if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                            continue;
+                        }
+                        ++fragments;
+                        final int index = row + x;
+                        final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                        if (zbuf[index] < z) {
+                            final float lightAmt = lightAmty + x * dlightAmtdx;
+                            final int light = Math.min(Math.max((int) (lightAmt * lightScale + 0.5f), 0), lightMax);
+                            final int color = shadeTable[light];
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceTextured(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float texu0 = tri[v0 + U], texu1 = tri[v1 + U], texu2 = tri[v2 + U];
+        final float dtexudx = ((texu1 - texu0) * ey2 - (texu2 - texu0) * ey1) * invArea;
+        final float dtexudy = ((texu2 - texu0) * ex1 - (texu1 - texu0) * ex2) * invArea;
+        final float texu00 = texu0 + (0.5f - fx0) * dtexudx + (0.5f - fy0) * dtexudy;
+        final float texv0 = tri[v0 + V], texv1 = tri[v1 + V], texv2 = tri[v2 + V];
+        final float dtexvdx = ((texv1 - texv0) * ey2 - (texv2 - texv0) * ey1) * invArea;
+        final float dtexvdy = ((texv2 - texv0) * ex1 - (texv1 - texv0) * ex2) * invArea;
+        final float texv00 = texv0 + (0.5f - fx0) * dtexvdx + (0.5f - fy0) * dtexvdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float texuy = texu00 + y * dtexudy;
+                    final float texvy = texv00 + y * dtexvdy;
+                    for (int x = xstart; x < xend; ++x) {
+                        if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                            continue;
+                        }
+                        ++fragments;
+                        final int index = row + x;
+                        final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                        if (zbuf[index] < z) {
+                            final float texu = texuy + x * dtexudx;
+                            final float texv = texvy + x * dtexvdx;
+                            final float recip = 1/z;
+                            final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                            final int base_color = texture.pixels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceTexturedSubdivided(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float texu0 = tri[v0 + U], texu1 = tri[v1 + U], texu2 = tri[v2 + U];
+        final float dtexudx = ((texu1 - texu0) * ey2 - (texu2 - texu0) * ey1) * invArea;
+        final float dtexudy = ((texu2 - texu0) * ex1 - (texu1 - texu0) * ex2) * invArea;
+        final float texu00 = texu0 + (0.5f - fx0) * dtexudx + (0.5f - fy0) * dtexudy;
+        final float texv0 = tri[v0 + V], texv1 = tri[v1 + V], texv2 = tri[v2 + V];
+        final float dtexvdx = ((texv1 - texv0) * ey2 - (texv2 - texv0) * ey1) * invArea;
+        final float dtexvdy = ((texv2 - texv0) * ex1 - (texv1 - texv0) * ex2) * invArea;
+        final float texv00 = texv0 + (0.5f - fx0) * dtexvdx + (0.5f - fy0) * dtexvdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float texuy = texu00 + y * dtexudy;
+                    final float texvy = texv00 + y * dtexvdy;
+                    for (int x = xstart; x < xend;) {
+                        final int segment = x & ~(subdivision - 1);
+                        final int s0 = Math.max(segment, minX), s1 = Math.min(segment + subdivision, maxX + 1);
+                        final float recip0 = 1 / Math.min(Math.max(zy + s0 * dzdx, zmin), zmax), recip1 = 1 / Math.min(Math.max(zy + s1 * dzdx, zmin), zmax);
+                        final float texX0 = Util.clamp((texuy + s0 * dtexudx) * recip0, 0f, 1f) * texXMax;
+                        final float texY0 = Util.clamp((texvy + s0 * dtexvdx) * recip0, 0f, 1f) * texYMax;
+                        final float dtexX = (Util.clamp((texuy + s1 * dtexudx) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                        final float dtexY = (Util.clamp((texvy + s1 * dtexvdx) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                        for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                            if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                                continue;
+                            }
+                            ++fragments;
+                            final int index = row + x;
+                            final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                            if (zbuf[index] < z) {
+                                final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                                final int base_color = texture.pixels[tex_index];
+                                final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                                zbuf[index] = z;
+                                pixels[index] = color | ALPHA;
+                                if (idbuf != null) {
+                                    idbuf[index] = modelId;
+                                }
+                                ++shaded;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceTexturedMipmapped(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getLevels();
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float texu0 = tri[v0 + U], texu1 = tri[v1 + U], texu2 = tri[v2 + U];
+        final float dtexudx = ((texu1 - texu0) * ey2 - (texu2 - texu0) * ey1) * invArea;
+        final float dtexudy = ((texu2 - texu0) * ex1 - (texu1 - texu0) * ex2) * invArea;
+        final float texu00 = texu0 + (0.5f - fx0) * dtexudx + (0.5f - fy0) * dtexudy;
+        final float texv0 = tri[v0 + V], texv1 = tri[v1 + V], texv2 = tri[v2 + V];
+        final float dtexvdx = ((texv1 - texv0) * ey2 - (texv2 - texv0) * ey1) * invArea;
+        final float dtexvdy = ((texv2 - texv0) * ex1 - (texv1 - texv0) * ex2) * invArea;
+        final float texv00 = texv0 + (0.5f - fx0) * dtexvdx + (0.5f - fy0) * dtexvdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                final float midX = (xstart + xend - 1) * 0.5f, midY = (ystart + yend - 1) * 0.5f;
+                final int level = mipLevel(texture, texu00 + midX * dtexudx + midY * dtexudy,
+                        texv00 + midX * dtexvdx + midY * dtexvdy, Math.min(Math.max(z00 + midX * dzdx + midY * dzdy, zmin), zmax),
+                        dtexudx, dtexvdx, dzdx, dtexudy, dtexvdy, dzdy);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float texuy = texu00 + y * dtexudy;
+                    final float texvy = texv00 + y * dtexvdy;
+                    for (int x = xstart; x < xend; ++x) {
+                        if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                            continue;
+                        }
+                        ++fragments;
+                        final int index = row + x;
+                        final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                        if (zbuf[index] < z) {
+                            final float texu = texuy + x * dtexudx;
+                            final float texv = texvy + x * dtexvdx;
+                            final float recip = 1/z;
+                            final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                            final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                            final int tex_index = (texY << ushift) | texX;
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceTexturedMipmappedSubdivided(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getLevels();
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float texu0 = tri[v0 + U], texu1 = tri[v1 + U], texu2 = tri[v2 + U];
+        final float dtexudx = ((texu1 - texu0) * ey2 - (texu2 - texu0) * ey1) * invArea;
+        final float dtexudy = ((texu2 - texu0) * ex1 - (texu1 - texu0) * ex2) * invArea;
+        final float texu00 = texu0 + (0.5f - fx0) * dtexudx + (0.5f - fy0) * dtexudy;
+        final float texv0 = tri[v0 + V], texv1 = tri[v1 + V], texv2 = tri[v2 + V];
+        final float dtexvdx = ((texv1 - texv0) * ey2 - (texv2 - texv0) * ey1) * invArea;
+        final float dtexvdy = ((texv2 - texv0) * ex1 - (texv1 - texv0) * ex2) * invArea;
+        final float texv00 = texv0 + (0.5f - fx0) * dtexvdx + (0.5f - fy0) * dtexvdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                final float midX = (xstart + xend - 1) * 0.5f, midY = (ystart + yend - 1) * 0.5f;
+                final int level = mipLevel(texture, texu00 + midX * dtexudx + midY * dtexudy,
+                        texv00 + midX * dtexvdx + midY * dtexvdy, Math.min(Math.max(z00 + midX * dzdx + midY * dzdy, zmin), zmax),
+                        dtexudx, dtexvdx, dzdx, dtexudy, dtexvdy, dzdy);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float texuy = texu00 + y * dtexudy;
+                    final float texvy = texv00 + y * dtexvdy;
+                    for (int x = xstart; x < xend;) {
+                        final int segment = x & ~(subdivision - 1);
+                        final int s0 = Math.max(segment, minX), s1 = Math.min(segment + subdivision, maxX + 1);
+                        final float recip0 = 1 / Math.min(Math.max(zy + s0 * dzdx, zmin), zmax), recip1 = 1 / Math.min(Math.max(zy + s1 * dzdx, zmin), zmax);
+                        final float texX0 = (texuy + s0 * dtexudx) * recip0 * texWidth;
+                        final float texY0 = (texvy + s0 * dtexvdx) * recip0 * texHeight;
+                        final float dtexX = ((texuy + s1 * dtexudx) * recip1 * texWidth - texX0) / (s1 - s0);
+                        final float dtexY = ((texvy + s1 * dtexvdx) * recip1 * texHeight - texY0) / (s1 - s0);
+                        for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                            if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                                continue;
+                            }
+                            ++fragments;
+                            final int index = row + x;
+                            final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                            if (zbuf[index] < z) {
+                                final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                                final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                                final int tex_index = (texY << ushift) | texX;
+                                final int base_color = texels[tex_index];
+                                final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                                zbuf[index] = z;
+                                pixels[index] = color | ALPHA;
+                                if (idbuf != null) {
+                                    idbuf[index] = modelId;
+                                }
+                                ++shaded;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceTexturedTiled(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getTiledLevels();
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float texu0 = tri[v0 + U], texu1 = tri[v1 + U], texu2 = tri[v2 + U];
+        final float dtexudx = ((texu1 - texu0) * ey2 - (texu2 - texu0) * ey1) * invArea;
+        final float dtexudy = ((texu2 - texu0) * ex1 - (texu1 - texu0) * ex2) * invArea;
+        final float texu00 = texu0 + (0.5f - fx0) * dtexudx + (0.5f - fy0) * dtexudy;
+        final float texv0 = tri[v0 + V], texv1 = tri[v1 + V], texv2 = tri[v2 + V];
+        final float dtexvdx = ((texv1 - texv0) * ey2 - (texv2 - texv0) * ey1) * invArea;
+        final float dtexvdy = ((texv2 - texv0) * ex1 - (texv1 - texv0) * ex2) * invArea;
+        final float texv00 = texv0 + (0.5f - fx0) * dtexvdx + (0.5f - fy0) * dtexvdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                final float midX = (xstart + xend - 1) * 0.5f, midY = (ystart + yend - 1) * 0.5f;
+                final int level = mipLevel(texture, texu00 + midX * dtexudx + midY * dtexudy,
+                        texv00 + midX * dtexvdx + midY * dtexvdy, Math.min(Math.max(z00 + midX * dzdx + midY * dzdy, zmin), zmax),
+                        dtexudx, dtexvdx, dzdx, dtexudy, dtexvdy, dzdy);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float texuy = texu00 + y * dtexudy;
+                    final float texvy = texv00 + y * dtexvdy;
+                    for (int x = xstart; x < xend; ++x) {
+                        if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                            continue;
+                        }
+                        ++fragments;
+                        final int index = row + x;
+                        final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                        if (zbuf[index] < z) {
+                            final float texu = texuy + x * dtexudx;
+                            final float texv = texvy + x * dtexvdx;
+                            final float recip = 1/z;
+                            final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                            final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                            final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceTexturedTiledSubdivided(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final int light = Math.min(Math.max((int) (tri[off + L] * lightScale + 0.5f), 0), lightMax);
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getTiledLevels();
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float texu0 = tri[v0 + U], texu1 = tri[v1 + U], texu2 = tri[v2 + U];
+        final float dtexudx = ((texu1 - texu0) * ey2 - (texu2 - texu0) * ey1) * invArea;
+        final float dtexudy = ((texu2 - texu0) * ex1 - (texu1 - texu0) * ex2) * invArea;
+        final float texu00 = texu0 + (0.5f - fx0) * dtexudx + (0.5f - fy0) * dtexudy;
+        final float texv0 = tri[v0 + V], texv1 = tri[v1 + V], texv2 = tri[v2 + V];
+        final float dtexvdx = ((texv1 - texv0) * ey2 - (texv2 - texv0) * ey1) * invArea;
+        final float dtexvdy = ((texv2 - texv0) * ex1 - (texv1 - texv0) * ex2) * invArea;
+        final float texv00 = texv0 + (0.5f - fx0) * dtexvdx + (0.5f - fy0) * dtexvdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                final float midX = (xstart + xend - 1) * 0.5f, midY = (ystart + yend - 1) * 0.5f;
+                final int level = mipLevel(texture, texu00 + midX * dtexudx + midY * dtexudy,
+                        texv00 + midX * dtexvdx + midY * dtexvdy, Math.min(Math.max(z00 + midX * dzdx + midY * dzdy, zmin), zmax),
+                        dtexudx, dtexvdx, dzdx, dtexudy, dtexvdy, dzdy);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float texuy = texu00 + y * dtexudy;
+                    final float texvy = texv00 + y * dtexvdy;
+                    for (int x = xstart; x < xend;) {
+                        final int segment = x & ~(subdivision - 1);
+                        final int s0 = Math.max(segment, minX), s1 = Math.min(segment + subdivision, maxX + 1);
+                        final float recip0 = 1 / Math.min(Math.max(zy + s0 * dzdx, zmin), zmax), recip1 = 1 / Math.min(Math.max(zy + s1 * dzdx, zmin), zmax);
+                        final float texX0 = (texuy + s0 * dtexudx) * recip0 * texWidth;
+                        final float texY0 = (texvy + s0 * dtexvdx) * recip0 * texHeight;
+                        final float dtexX = ((texuy + s1 * dtexudx) * recip1 * texWidth - texX0) / (s1 - s0);
+                        final float dtexY = ((texvy + s1 * dtexvdx) * recip1 * texHeight - texY0) / (s1 - s0);
+                        for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                            if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                                continue;
+                            }
+                            ++fragments;
+                            final int index = row + x;
+                            final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                            if (zbuf[index] < z) {
+                                final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                                final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                                final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                                final int base_color = texels[tex_index];
+                                final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                                zbuf[index] = z;
+                                pixels[index] = color | ALPHA;
+                                if (idbuf != null) {
+                                    idbuf[index] = modelId;
+                                }
+                                ++shaded;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceSmoothTextured(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float lightAmt0 = tri[v0 + L], lightAmt1 = tri[v1 + L], lightAmt2 = tri[v2 + L];
+        final float dlightAmtdx = ((lightAmt1 - lightAmt0) * ey2 - (lightAmt2 - lightAmt0) * ey1) * invArea;
+        final float dlightAmtdy = ((lightAmt2 - lightAmt0) * ex1 - (lightAmt1 - lightAmt0) * ex2) * invArea;
+        final float lightAmt00 = lightAmt0 + (0.5f - fx0) * dlightAmtdx + (0.5f - fy0) * dlightAmtdy;
+        final float texu0 = tri[v0 + U], texu1 = tri[v1 + U], texu2 = tri[v2 + U];
+        final float dtexudx = ((texu1 - texu0) * ey2 - (texu2 - texu0) * ey1) * invArea;
+        final float dtexudy = ((texu2 - texu0) * ex1 - (texu1 - texu0) * ex2) * invArea;
+        final float texu00 = texu0 + (0.5f - fx0) * dtexudx + (0.5f - fy0) * dtexudy;
+        final float texv0 = tri[v0 + V], texv1 = tri[v1 + V], texv2 = tri[v2 + V];
+        final float dtexvdx = ((texv1 - texv0) * ey2 - (texv2 - texv0) * ey1) * invArea;
+        final float dtexvdy = ((texv2 - texv0) * ex1 - (texv1 - texv0) * ex2) * invArea;
+        final float texv00 = texv0 + (0.5f - fx0) * dtexvdx + (0.5f - fy0) * dtexvdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float lightAmty = lightAmt00 + y * dlightAmtdy;
+                    final float texuy = texu00 + y * dtexudy;
+                    final float texvy = texv00 + y * dtexvdy;
+                    for (int x = xstart; x < xend; ++x) {
+                        if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                            continue;
+                        }
+                        ++fragments;
+                        final int index = row + x;
+                        final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                        if (zbuf[index] < z) {
+                            final float lightAmt = lightAmty + x * dlightAmtdx;
+                            final float texu = texuy + x * dtexudx;
+                            final float texv = texvy + x * dtexvdx;
+                            final int light = Math.min(Math.max((int) (lightAmt * lightScale + 0.5f), 0), lightMax);
+                            final float recip = 1/z;
+                            final int tex_index = ((int) (Util.clamp(texv * recip, 0f, 1f) * texYMax)) * texture.width + (int) (Util.clamp(texu * recip, 0f, 1f) * texXMax);
+                            final int base_color = texture.pixels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceSmoothTexturedSubdivided(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float lightAmt0 = tri[v0 + L], lightAmt1 = tri[v1 + L], lightAmt2 = tri[v2 + L];
+        final float dlightAmtdx = ((lightAmt1 - lightAmt0) * ey2 - (lightAmt2 - lightAmt0) * ey1) * invArea;
+        final float dlightAmtdy = ((lightAmt2 - lightAmt0) * ex1 - (lightAmt1 - lightAmt0) * ex2) * invArea;
+        final float lightAmt00 = lightAmt0 + (0.5f - fx0) * dlightAmtdx + (0.5f - fy0) * dlightAmtdy;
+        final float texu0 = tri[v0 + U], texu1 = tri[v1 + U], texu2 = tri[v2 + U];
+        final float dtexudx = ((texu1 - texu0) * ey2 - (texu2 - texu0) * ey1) * invArea;
+        final float dtexudy = ((texu2 - texu0) * ex1 - (texu1 - texu0) * ex2) * invArea;
+        final float texu00 = texu0 + (0.5f - fx0) * dtexudx + (0.5f - fy0) * dtexudy;
+        final float texv0 = tri[v0 + V], texv1 = tri[v1 + V], texv2 = tri[v2 + V];
+        final float dtexvdx = ((texv1 - texv0) * ey2 - (texv2 - texv0) * ey1) * invArea;
+        final float dtexvdy = ((texv2 - texv0) * ex1 - (texv1 - texv0) * ex2) * invArea;
+        final float texv00 = texv0 + (0.5f - fx0) * dtexvdx + (0.5f - fy0) * dtexvdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float lightAmty = lightAmt00 + y * dlightAmtdy;
+                    final float texuy = texu00 + y * dtexudy;
+                    final float texvy = texv00 + y * dtexvdy;
+                    for (int x = xstart; x < xend;) {
+                        final int segment = x & ~(subdivision - 1);
+                        final int s0 = Math.max(segment, minX), s1 = Math.min(segment + subdivision, maxX + 1);
+                        final float recip0 = 1 / Math.min(Math.max(zy + s0 * dzdx, zmin), zmax), recip1 = 1 / Math.min(Math.max(zy + s1 * dzdx, zmin), zmax);
+                        final float texX0 = Util.clamp((texuy + s0 * dtexudx) * recip0, 0f, 1f) * texXMax;
+                        final float texY0 = Util.clamp((texvy + s0 * dtexvdx) * recip0, 0f, 1f) * texYMax;
+                        final float dtexX = (Util.clamp((texuy + s1 * dtexudx) * recip1, 0f, 1f) * texXMax - texX0) / (s1 - s0);
+                        final float dtexY = (Util.clamp((texvy + s1 * dtexvdx) * recip1, 0f, 1f) * texYMax - texY0) / (s1 - s0);
+                        for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                            if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                                continue;
+                            }
+                            ++fragments;
+                            final int index = row + x;
+                            final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                            if (zbuf[index] < z) {
+                                final float lightAmt = lightAmty + x * dlightAmtdx;
+                                final int light = Math.min(Math.max((int) (lightAmt * lightScale + 0.5f), 0), lightMax);
+                                final int tex_index = ((int) (texY0 + (x - s0) * dtexY)) * texture.width + (int) (texX0 + (x - s0) * dtexX);
+                                final int base_color = texture.pixels[tex_index];
+                                final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                                zbuf[index] = z;
+                                pixels[index] = color | ALPHA;
+                                if (idbuf != null) {
+                                    idbuf[index] = modelId;
+                                }
+                                ++shaded;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceSmoothTexturedMipmapped(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getLevels();
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float lightAmt0 = tri[v0 + L], lightAmt1 = tri[v1 + L], lightAmt2 = tri[v2 + L];
+        final float dlightAmtdx = ((lightAmt1 - lightAmt0) * ey2 - (lightAmt2 - lightAmt0) * ey1) * invArea;
+        final float dlightAmtdy = ((lightAmt2 - lightAmt0) * ex1 - (lightAmt1 - lightAmt0) * ex2) * invArea;
+        final float lightAmt00 = lightAmt0 + (0.5f - fx0) * dlightAmtdx + (0.5f - fy0) * dlightAmtdy;
+        final float texu0 = tri[v0 + U], texu1 = tri[v1 + U], texu2 = tri[v2 + U];
+        final float dtexudx = ((texu1 - texu0) * ey2 - (texu2 - texu0) * ey1) * invArea;
+        final float dtexudy = ((texu2 - texu0) * ex1 - (texu1 - texu0) * ex2) * invArea;
+        final float texu00 = texu0 + (0.5f - fx0) * dtexudx + (0.5f - fy0) * dtexudy;
+        final float texv0 = tri[v0 + V], texv1 = tri[v1 + V], texv2 = tri[v2 + V];
+        final float dtexvdx = ((texv1 - texv0) * ey2 - (texv2 - texv0) * ey1) * invArea;
+        final float dtexvdy = ((texv2 - texv0) * ex1 - (texv1 - texv0) * ex2) * invArea;
+        final float texv00 = texv0 + (0.5f - fx0) * dtexvdx + (0.5f - fy0) * dtexvdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                final float midX = (xstart + xend - 1) * 0.5f, midY = (ystart + yend - 1) * 0.5f;
+                final int level = mipLevel(texture, texu00 + midX * dtexudx + midY * dtexudy,
+                        texv00 + midX * dtexvdx + midY * dtexvdy, Math.min(Math.max(z00 + midX * dzdx + midY * dzdy, zmin), zmax),
+                        dtexudx, dtexvdx, dzdx, dtexudy, dtexvdy, dzdy);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float lightAmty = lightAmt00 + y * dlightAmtdy;
+                    final float texuy = texu00 + y * dtexudy;
+                    final float texvy = texv00 + y * dtexvdy;
+                    for (int x = xstart; x < xend; ++x) {
+                        if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                            continue;
+                        }
+                        ++fragments;
+                        final int index = row + x;
+                        final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                        if (zbuf[index] < z) {
+                            final float lightAmt = lightAmty + x * dlightAmtdx;
+                            final float texu = texuy + x * dtexudx;
+                            final float texv = texvy + x * dtexvdx;
+                            final int light = Math.min(Math.max((int) (lightAmt * lightScale + 0.5f), 0), lightMax);
+                            final float recip = 1/z;
+                            final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                            final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                            final int tex_index = (texY << ushift) | texX;
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceSmoothTexturedMipmappedSubdivided(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getLevels();
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float lightAmt0 = tri[v0 + L], lightAmt1 = tri[v1 + L], lightAmt2 = tri[v2 + L];
+        final float dlightAmtdx = ((lightAmt1 - lightAmt0) * ey2 - (lightAmt2 - lightAmt0) * ey1) * invArea;
+        final float dlightAmtdy = ((lightAmt2 - lightAmt0) * ex1 - (lightAmt1 - lightAmt0) * ex2) * invArea;
+        final float lightAmt00 = lightAmt0 + (0.5f - fx0) * dlightAmtdx + (0.5f - fy0) * dlightAmtdy;
+        final float texu0 = tri[v0 + U], texu1 = tri[v1 + U], texu2 = tri[v2 + U];
+        final float dtexudx = ((texu1 - texu0) * ey2 - (texu2 - texu0) * ey1) * invArea;
+        final float dtexudy = ((texu2 - texu0) * ex1 - (texu1 - texu0) * ex2) * invArea;
+        final float texu00 = texu0 + (0.5f - fx0) * dtexudx + (0.5f - fy0) * dtexudy;
+        final float texv0 = tri[v0 + V], texv1 = tri[v1 + V], texv2 = tri[v2 + V];
+        final float dtexvdx = ((texv1 - texv0) * ey2 - (texv2 - texv0) * ey1) * invArea;
+        final float dtexvdy = ((texv2 - texv0) * ex1 - (texv1 - texv0) * ex2) * invArea;
+        final float texv00 = texv0 + (0.5f - fx0) * dtexvdx + (0.5f - fy0) * dtexvdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                final float midX = (xstart + xend - 1) * 0.5f, midY = (ystart + yend - 1) * 0.5f;
+                final int level = mipLevel(texture, texu00 + midX * dtexudx + midY * dtexudy,
+                        texv00 + midX * dtexvdx + midY * dtexvdy, Math.min(Math.max(z00 + midX * dzdx + midY * dzdy, zmin), zmax),
+                        dtexudx, dtexvdx, dzdx, dtexudy, dtexvdy, dzdy);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float lightAmty = lightAmt00 + y * dlightAmtdy;
+                    final float texuy = texu00 + y * dtexudy;
+                    final float texvy = texv00 + y * dtexvdy;
+                    for (int x = xstart; x < xend;) {
+                        final int segment = x & ~(subdivision - 1);
+                        final int s0 = Math.max(segment, minX), s1 = Math.min(segment + subdivision, maxX + 1);
+                        final float recip0 = 1 / Math.min(Math.max(zy + s0 * dzdx, zmin), zmax), recip1 = 1 / Math.min(Math.max(zy + s1 * dzdx, zmin), zmax);
+                        final float texX0 = (texuy + s0 * dtexudx) * recip0 * texWidth;
+                        final float texY0 = (texvy + s0 * dtexvdx) * recip0 * texHeight;
+                        final float dtexX = ((texuy + s1 * dtexudx) * recip1 * texWidth - texX0) / (s1 - s0);
+                        final float dtexY = ((texvy + s1 * dtexvdx) * recip1 * texHeight - texY0) / (s1 - s0);
+                        for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                            if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                                continue;
+                            }
+                            ++fragments;
+                            final int index = row + x;
+                            final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                            if (zbuf[index] < z) {
+                                final float lightAmt = lightAmty + x * dlightAmtdx;
+                                final int light = Math.min(Math.max((int) (lightAmt * lightScale + 0.5f), 0), lightMax);
+                                final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                                final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                                final int tex_index = (texY << ushift) | texX;
+                                final int base_color = texels[tex_index];
+                                final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                                zbuf[index] = z;
+                                pixels[index] = color | ALPHA;
+                                if (idbuf != null) {
+                                    idbuf[index] = modelId;
+                                }
+                                ++shaded;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceSmoothTexturedTiled(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getTiledLevels();
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float lightAmt0 = tri[v0 + L], lightAmt1 = tri[v1 + L], lightAmt2 = tri[v2 + L];
+        final float dlightAmtdx = ((lightAmt1 - lightAmt0) * ey2 - (lightAmt2 - lightAmt0) * ey1) * invArea;
+        final float dlightAmtdy = ((lightAmt2 - lightAmt0) * ex1 - (lightAmt1 - lightAmt0) * ex2) * invArea;
+        final float lightAmt00 = lightAmt0 + (0.5f - fx0) * dlightAmtdx + (0.5f - fy0) * dlightAmtdy;
+        final float texu0 = tri[v0 + U], texu1 = tri[v1 + U], texu2 = tri[v2 + U];
+        final float dtexudx = ((texu1 - texu0) * ey2 - (texu2 - texu0) * ey1) * invArea;
+        final float dtexudy = ((texu2 - texu0) * ex1 - (texu1 - texu0) * ex2) * invArea;
+        final float texu00 = texu0 + (0.5f - fx0) * dtexudx + (0.5f - fy0) * dtexudy;
+        final float texv0 = tri[v0 + V], texv1 = tri[v1 + V], texv2 = tri[v2 + V];
+        final float dtexvdx = ((texv1 - texv0) * ey2 - (texv2 - texv0) * ey1) * invArea;
+        final float dtexvdy = ((texv2 - texv0) * ex1 - (texv1 - texv0) * ex2) * invArea;
+        final float texv00 = texv0 + (0.5f - fx0) * dtexvdx + (0.5f - fy0) * dtexvdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                final float midX = (xstart + xend - 1) * 0.5f, midY = (ystart + yend - 1) * 0.5f;
+                final int level = mipLevel(texture, texu00 + midX * dtexudx + midY * dtexudy,
+                        texv00 + midX * dtexvdx + midY * dtexvdy, Math.min(Math.max(z00 + midX * dzdx + midY * dzdy, zmin), zmax),
+                        dtexudx, dtexvdx, dzdx, dtexudy, dtexvdy, dzdy);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float lightAmty = lightAmt00 + y * dlightAmtdy;
+                    final float texuy = texu00 + y * dtexudy;
+                    final float texvy = texv00 + y * dtexvdy;
+                    for (int x = xstart; x < xend; ++x) {
+                        if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                            continue;
+                        }
+                        ++fragments;
+                        final int index = row + x;
+                        final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                        if (zbuf[index] < z) {
+                            final float lightAmt = lightAmty + x * dlightAmtdx;
+                            final float texu = texuy + x * dtexudx;
+                            final float texv = texvy + x * dtexvdx;
+                            final int light = Math.min(Math.max((int) (lightAmt * lightScale + 0.5f), 0), lightMax);
+                            final float recip = 1/z;
+                            final int texX = ((int) Math.floor(texu * recip * texWidth)) & umask;
+                            final int texY = ((int) Math.floor(texv * recip * texHeight)) & vmask;
+                            final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                            final int base_color = texels[tex_index];
+                            final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                            zbuf[index] = z;
+                            pixels[index] = color | ALPHA;
+                            if (idbuf != null) {
+                                idbuf[index] = modelId;
+                            }
+                            ++shaded;
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+    private void halfSpaceSmoothTexturedTiledSubdivided(final int modelId, final Material material,
+            final float[] tri, final int off,
+            final int clipX0, final int clipY0, final int clipX1, final int clipY1) {
+
+        // Vertices snapped to the sub-pixel grid and wound so that the inside
+        // of each edge is positive
+        int v0 = off, v1 = off + VERTEX_STRIDE, v2 = off + 2 * VERTEX_STRIDE;
+        final int x0 = toFixed(tri[v0 + X]), y0 = toFixed(tri[v0 + Y]);
+        int x1 = toFixed(tri[v1 + X]), y1 = toFixed(tri[v1 + Y]);
+        int x2 = toFixed(tri[v2 + X]), y2 = toFixed(tri[v2 + Y]);
+        long area = (long) (x1 - x0) * (y2 - y0) - (long) (x2 - x0) * (y1 - y0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            int t = v1; v1 = v2; v2 = t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            area = -area;
+        }
+
+        // Pixels that may have their centers inside
+        final int minX = Math.max(Math.min(x0, Math.min(x1, x2)) >> SUBPIXEL_BITS, clipX0);
+        final int minY = Math.max(Math.min(y0, Math.min(y1, y2)) >> SUBPIXEL_BITS, clipY0);
+        final int maxX = Math.min(Math.max(x0, Math.max(x1, x2)) >> SUBPIXEL_BITS, clipX1 - 1);
+        final int maxY = Math.min(Math.max(y0, Math.max(y1, y2)) >> SUBPIXEL_BITS, clipY1 - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions of the pixel coordinates, a * x + b * y + c, that are
+        // not negative for pixels inside, and the range of each over a block
+        final int a01 = (y0 - y1) << SUBPIXEL_BITS, b01 = (x1 - x0) << SUBPIXEL_BITS;
+        final int a12 = (y1 - y2) << SUBPIXEL_BITS, b12 = (x2 - x1) << SUBPIXEL_BITS;
+        final int a20 = (y2 - y0) << SUBPIXEL_BITS, b20 = (x0 - x2) << SUBPIXEL_BITS;
+        final long c01 = edgeOffset(x0, y0, x1, y1);
+        final long c12 = edgeOffset(x1, y1, x2, y2);
+        final long c20 = edgeOffset(x2, y2, x0, y0);
+        final long min01 = BLOCK_MASK * ((long) Math.min(a01, 0) + Math.min(b01, 0));
+        final long min12 = BLOCK_MASK * ((long) Math.min(a12, 0) + Math.min(b12, 0));
+        final long min20 = BLOCK_MASK * ((long) Math.min(a20, 0) + Math.min(b20, 0));
+        final long max01 = BLOCK_MASK * ((long) Math.max(a01, 0) + Math.max(b01, 0));
+        final long max12 = BLOCK_MASK * ((long) Math.max(a12, 0) + Math.max(b12, 0));
+        final long max20 = BLOCK_MASK * ((long) Math.max(a20, 0) + Math.max(b20, 0));
+
+        // For the attribute gradients, shared by every attribute
+        final float fx0 = (float) x0 / SUBPIXEL, fy0 = (float) y0 / SUBPIXEL;
+        final float ex1 = (float) (x1 - x0) / SUBPIXEL, ey1 = (float) (y1 - y0) / SUBPIXEL;
+        final float ex2 = (float) (x2 - x0) / SUBPIXEL, ey2 = (float) (y2 - y0) / SUBPIXEL;
+        final float invArea = (float) (SUBPIXEL * SUBPIXEL) / area;
+        final float zmin = Math.min(tri[v0 + Z], Math.min(tri[v1 + Z], tri[v2 + Z]));
+        final float zmax = Math.max(tri[v0 + Z], Math.max(tri[v1 + Z], tri[v2 + Z]));
+
+        // Pixels covered, and pixels that passed the depth test
+        int fragments = 0, shaded = 0;
+
+        final float lightScale = LIGHT_ONE;
+        final int lightMax = LIGHT_ONE;
+        final Texture texture = material.texture;
+        final float texXMax = texture.width - 1;
+        final float texYMax = texture.height - 1;
+        final int[][] levels = texture.getTiledLevels();
+        final float z0 = tri[v0 + Z], z1 = tri[v1 + Z], z2 = tri[v2 + Z];
+        final float dzdx = ((z1 - z0) * ey2 - (z2 - z0) * ey1) * invArea;
+        final float dzdy = ((z2 - z0) * ex1 - (z1 - z0) * ex2) * invArea;
+        final float z00 = z0 + (0.5f - fx0) * dzdx + (0.5f - fy0) * dzdy;
+        final float lightAmt0 = tri[v0 + L], lightAmt1 = tri[v1 + L], lightAmt2 = tri[v2 + L];
+        final float dlightAmtdx = ((lightAmt1 - lightAmt0) * ey2 - (lightAmt2 - lightAmt0) * ey1) * invArea;
+        final float dlightAmtdy = ((lightAmt2 - lightAmt0) * ex1 - (lightAmt1 - lightAmt0) * ex2) * invArea;
+        final float lightAmt00 = lightAmt0 + (0.5f - fx0) * dlightAmtdx + (0.5f - fy0) * dlightAmtdy;
+        final float texu0 = tri[v0 + U], texu1 = tri[v1 + U], texu2 = tri[v2 + U];
+        final float dtexudx = ((texu1 - texu0) * ey2 - (texu2 - texu0) * ey1) * invArea;
+        final float dtexudy = ((texu2 - texu0) * ex1 - (texu1 - texu0) * ex2) * invArea;
+        final float texu00 = texu0 + (0.5f - fx0) * dtexudx + (0.5f - fy0) * dtexudy;
+        final float texv0 = tri[v0 + V], texv1 = tri[v1 + V], texv2 = tri[v2 + V];
+        final float dtexvdx = ((texv1 - texv0) * ey2 - (texv2 - texv0) * ey1) * invArea;
+        final float dtexvdy = ((texv2 - texv0) * ex1 - (texv1 - texv0) * ex2) * invArea;
+        final float texv00 = texv0 + (0.5f - fx0) * dtexvdx + (0.5f - fy0) * dtexvdy;
+        for (int by = minY & ~BLOCK_MASK; by <= maxY; by += BLOCK_SIZE) {
+            for (int bx = minX & ~BLOCK_MASK; bx <= maxX; bx += BLOCK_SIZE) {
+                final long e01 = a01 * (long) bx + b01 * (long) by + c01;
+                final long e12 = a12 * (long) bx + b12 * (long) by + c12;
+                final long e20 = a20 * (long) bx + b20 * (long) by + c20;
+                if (e01 + max01 < 0 || e12 + max12 < 0 || e20 + max20 < 0) {
+                    continue;
+                }
+                final boolean covered = e01 + min01 >= 0 && e12 + min12 >= 0 && e20 + min20 >= 0;
+                final int w01 = clampEdge(e01), w12 = clampEdge(e12), w20 = clampEdge(e20);
+                final int xstart = Math.max(bx, minX), xend = Math.min(bx + BLOCK_SIZE, maxX + 1);
+                final int ystart = Math.max(by, minY), yend = Math.min(by + BLOCK_SIZE, maxY + 1);
+                final float midX = (xstart + xend - 1) * 0.5f, midY = (ystart + yend - 1) * 0.5f;
+                final int level = mipLevel(texture, texu00 + midX * dtexudx + midY * dtexudy,
+                        texv00 + midX * dtexvdx + midY * dtexvdy, Math.min(Math.max(z00 + midX * dzdx + midY * dzdy, zmin), zmax),
+                        dtexudx, dtexvdx, dzdx, dtexudy, dtexvdy, dzdy);
+                final int[] texels = levels[level];
+                final int ushift = Math.max(texture.widthShift - level, 0), vshift = Math.max(texture.heightShift - level, 0);
+                final int umask = (1 << ushift) - 1, vmask = (1 << vshift) - 1;
+                final float texWidth = 1 << ushift, texHeight = 1 << vshift;
+                final int tileShift = Math.min(Texture.TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+                final int rowShift = ushift + tileShift, cellShift = tileShift + tileShift;
+                for (int y = ystart; y < yend; ++y) {
+                    final int row = y * width;
+                    final int r01 = w01 + (y - by) * b01, r12 = w12 + (y - by) * b12, r20 = w20 + (y - by) * b20;
+                    final float zy = z00 + y * dzdy;
+                    final float lightAmty = lightAmt00 + y * dlightAmtdy;
+                    final float texuy = texu00 + y * dtexudy;
+                    final float texvy = texv00 + y * dtexvdy;
+                    for (int x = xstart; x < xend;) {
+                        final int segment = x & ~(subdivision - 1);
+                        final int s0 = Math.max(segment, minX), s1 = Math.min(segment + subdivision, maxX + 1);
+                        final float recip0 = 1 / Math.min(Math.max(zy + s0 * dzdx, zmin), zmax), recip1 = 1 / Math.min(Math.max(zy + s1 * dzdx, zmin), zmax);
+                        final float texX0 = (texuy + s0 * dtexudx) * recip0 * texWidth;
+                        final float texY0 = (texvy + s0 * dtexvdx) * recip0 * texHeight;
+                        final float dtexX = ((texuy + s1 * dtexudx) * recip1 * texWidth - texX0) / (s1 - s0);
+                        final float dtexY = ((texvy + s1 * dtexvdx) * recip1 * texHeight - texY0) / (s1 - s0);
+                        for (final int stop = Math.min(s1, xend); x < stop; ++x) {
+                            if (!covered && ((r01 + (x - bx) * a01) | (r12 + (x - bx) * a12) | (r20 + (x - bx) * a20)) < 0) {
+                                continue;
+                            }
+                            ++fragments;
+                            final int index = row + x;
+                            final float z = Math.min(Math.max(zy + x * dzdx, zmin), zmax);
+                            if (zbuf[index] < z) {
+                                final float lightAmt = lightAmty + x * dlightAmtdx;
+                                final int light = Math.min(Math.max((int) (lightAmt * lightScale + 0.5f), 0), lightMax);
+                                final int texX = ((int) Math.floor(texX0 + (x - s0) * dtexX)) & umask;
+                                final int texY = ((int) Math.floor(texY0 + (x - s0) * dtexY)) & vmask;
+                                final int tex_index = ((texY >> tileShift) << rowShift) | ((texX >> tileShift) << cellShift) | ((texY & tileMask) << tileShift) | (texX & tileMask);
+                                final int base_color = texels[tex_index];
+                                final int color = ((((base_color & 0xff00ff) * light) >>> LIGHT_BITS) & 0xff00ff) | ((((base_color & 0xff00) * light) >>> LIGHT_BITS) & 0xff00);
+                                zbuf[index] = z;
+                                pixels[index] = color | ALPHA;
+                                if (idbuf != null) {
+                                    idbuf[index] = modelId;
+                                }
+                                ++shaded;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        statistics.fragments.add(fragments);
+        statistics.shadedFragments.add(shaded);
+    }
+
+
+
+    /**
+     * Choose the mipmap level for a point of a textured span: the one where a
+     * step of a pixel along x or y (whichever is longer) covers about one
+     * texel.
+     *
+     * @param texu
+     *            u/z at the point, and likewise for v/z and 1/z
+     * @param dtexudx
+     *            the gradient of u/z along x, and likewise for the rest
+     */
+    private static int mipLevel(final Texture texture, final float texu, final float texv, final float z,
+            final float dtexudx, final float dtexvdx, final float dzdx,
+            final float dtexudy, final float dtexvdy, final float dzdy) {
+        final float u = texu / z, v = texv / z;
+        // Gradients of u and v in texels, times z
+        final float dudx = (dtexudx - u * dzdx) * texture.width, dvdx = (dtexvdx - v * dzdx) * texture.height;
+        final float dudy = (dtexudy - u * dzdy) * texture.width, dvdy = (dtexvdy - v * dzdy) * texture.height;
+        final float footprint = Math.max(dudx * dudx + dvdx * dvdx, dudy * dudy + dvdy * dvdy) / (z * z);
+        // Half the exponent of the squared footprint is log2 of the footprint
+        return Math.min(Math.max(Math.getExponent(footprint) >> 1, 0), texture.getLevels().length - 1);
+    }
+
+    private static int toFixed(final float coord) {
+        return Math.round(coord * SUBPIXEL);
+    }
+
+    /**
+     * Get the constant term of the edge function for the edge from
+     * (x0, y0) to (x1, y1), in sub-pixel units, as a function of pixel
+     * coordinates sampled at pixel centers.  Pixels exactly on the edge are
+     * inside only if the edge points up, or along +x, so that of two
+     * triangles sharing the edge exactly one draws them.
+     */
+    private static long edgeOffset(final int x0, final int y0, final int x1, final int y1) {
+        final long dx = x1 - x0, dy = y1 - y0;
+        final long half = SUBPIXEL / 2;
+        final long bias = (dy < 0 || (dy == 0 && dx > 0)) ? 0 : -1;
+        return dx * (half - y0) - dy * (half - x0) + bias;
+    }
+
+    /**
+     * Narrow an edge function value to an int.  Values are only ever used
+     * for their sign within one block, across which an edge function changes
+     * by far less than the limit.
+     */
+    private static int clampEdge(final long e) {
+        return (int) Math.max(Math.min(e, EDGE_LIMIT), -EDGE_LIMIT);
+    }
+
+}
+
@@ -0,0 +1,228 @@
+package sj3d;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Turns the rendered pixels into the final image: scales them down to the
+ * screen size when antialiasing, and blends them over the previous frame
+ * when motion blurring.
+ *
+ * <p>For whole antialiasing factors each final pixel is the average of a
+ * square of samples.  Other factors use a separable filter: each final pixel
+ * is the average of the samples its area covers, with samples that are only
+ * partly covered weighted by how much of them is, first along rows and then
+ * along columns.  Colors are worked on with the red and blue channels packed
+ * into one integer, and the rows are spread across threads.
+ */
+final class Resolver {
+
+    // Rows resolved together by one task
+    private static final int BAND_HEIGHT = 16;
+
+    // Weights of the separable filter are in fixed point, summing to this
+    private static final int WEIGHT_BITS = 8;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+    // Largest whole factor whose sums fit in 16 bits per channel
+    private static final int MAX_BOX = 16;
+
+    private final int srcWidth, srcHeight;
+    private final int width, height;
+
+    // Weight of the new frame over the previous one, from 0 to 256, or -1
+    // to replace it
+    private final int blend;
+
+    // The whole factor, or 0 to use the separable filter, and 2^32 divided by
+    // the number of samples per pixel, rounded up, to divide by multiplying
+    private final int box;
+    private final long boxScale;
+
+    // Separable filter: the number of samples every column and row takes,
+    // the first sample of each, and the weights of the samples (0 for
+    // samples past the ones covered), followed by the result of filtering
+    // the rows
+    private final int colTaps, rowTaps;
+    private final int[] colStart, rowStart;
+    private final int[] colWeights, rowWeights;
+    private final int[] rows;
+
+    Resolver(final int srcWidth, final int srcHeight, final int width, final int height,
+            final RenderSettings settings) {
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.width = width;
+        this.height = height;
+
+        final int alpha = settings.mblur >>> 24;
+        blend = settings.hasMotionBlur() ? alpha + (alpha >> 7) : -1;
+
+        final int factor = srcWidth / width;
+        box = factor <= MAX_BOX && factor * width == srcWidth && factor * height == srcHeight ? factor : 0;
+        boxScale = box > 0 ? (1L << 32) / (box * box) + 1 : 0;
+        if (box == 0) {
+            colTaps = taps(srcWidth, width);
+            rowTaps = taps(srcHeight, height);
+            colStart = new int[width];
+            colWeights = new int[width * colTaps];
+            rowStart = new int[height];
+            rowWeights = new int[height * rowTaps];
+            weigh(srcWidth, width, colTaps, colStart, colWeights);
+            weigh(srcHeight, height, rowTaps, rowStart, rowWeights);
+            rows = new int[width * srcHeight];
+        } else {
+            colTaps = rowTaps = 0;
+            colStart = rowStart = null;
+            colWeights = rowWeights = null;
+            rows = null;
+        }
+    }
+
+    // The most samples any of size final pixels covers, out of srcSize
+    private static int taps(final int srcSize, final int size) {
+        return Math.min((int) Math.ceil((double) srcSize / size) + 1, srcSize);
+    }
+
+    /**
+     * Work out which samples each of <code>size</code> final pixels covers,
+     * out of <code>srcSize</code>, and by how much.
+     */
+    private static void weigh(final int srcSize, final int size, final int taps,
+            final int[] start, final int[] weights) {
+        final double scale = (double) srcSize / size;
+        for (int i = 0; i < size; ++i) {
+            final double lo = i * scale, hi = (i + 1) * scale;
+            final int first = (int) lo;
+            final int last = Math.min((int) Math.ceil(hi), srcSize);
+            // Near the end, start early so the taps stay inside
+            start[i] = Math.min(first, srcSize - taps);
+            // Round the running total, so that the weights add up exactly
+            int done = 0;
+            for (int s = first; s < last; ++s) {
+                final double covered = Math.min(s + 1, hi) - lo;
+                final int total = (int) Math.round(covered / (hi - lo) * WEIGHT_ONE);
+                weights[i * taps + s - start[i]] = total - done;
+                done = total;
+            }
+        }
+    }
+
+    /**
+     * Resolve the rendered samples into the final image.
+     *
+     * @param src  the rendered samples, <code>srcWidth</code> by
+     *             <code>srcHeight</code>
+     * @param dst  the final image, <code>width</code> by <code>height</code>
+     * @param pool the pool to run on, or <code>null</code>
+     */
+    void resolve(final int[] src, final int[] dst, final ForkJoinPool pool) {
+        resolve(src, dst, dst, pool);
+    }
+
+    /**
+     * Resolve the rendered samples into a final image other than the one
+     * holding the previous frame, such as the next image of a swap chain.
+     *
+     * @param src      the rendered samples, <code>srcWidth</code> by
+     *                 <code>srcHeight</code>
+     * @param previous the previous frame to blend over when motion
+     *                 blurring, which may be <code>dst</code>
+     * @param dst      the final image, <code>width</code> by
+     *                 <code>height</code>
+     * @param pool     the pool to run on, or <code>null</code>
+     */
+    void resolve(final int[] src, final int[] previous, final int[] dst, final ForkJoinPool pool) {
+        if (box > 0) {
+            Parallel.forEach(pool, (height + BAND_HEIGHT - 1) / BAND_HEIGHT, band -> resolveBox(src, previous,
+                    dst, band * BAND_HEIGHT, Math.min((band + 1) * BAND_HEIGHT, height)));
+        } else {
+            Parallel.forEach(pool, (srcHeight + BAND_HEIGHT - 1) / BAND_HEIGHT, band -> filterRows(src,
+                    band * BAND_HEIGHT, Math.min((band + 1) * BAND_HEIGHT, srcHeight)));
+            Parallel.forEach(pool, (height + BAND_HEIGHT - 1) / BAND_HEIGHT, band -> filterColumns(previous,
+                    dst, band * BAND_HEIGHT, Math.min((band + 1) * BAND_HEIGHT, height)));
+        }
+    }
+
+    private void resolveBox(final int[] src, final int[] previous, final int[] dst,
+            final int y0, final int y1) {
+        final int n = box, samples = n * n, half = samples / 2;
+        // Sums for each final pixel of the row, added up a row of samples at
+        // a time so the samples are read in order
+        final int[] rbs = new int[width], gs = new int[width];
+        for (int y = y0; y < y1; ++y) {
+            for (int row = y * n * srcWidth, end = row + n * srcWidth; row < end; row += srcWidth) {
+                for (int x = 0, i = row; x < width; ++x) {
+                    int rb = rbs[x], g = gs[x];
+                    for (final int stop = i + n; i < stop; ++i) {
+                        final int color = src[i];
+                        rb += color & 0xff00ff;
+                        g += color & 0xff00;
+                    }
+                    rbs[x] = rb;
+                    gs[x] = g;
+                }
+            }
+            for (int x = 0; x < width; ++x) {
+                final int rb = rbs[x], g = gs[x];
+                final int r = (int) (((rb >>> 16) + half) * boxScale >>> 32);
+                final int gg = (int) (((g >>> 8) + half) * boxScale >>> 32);
+                final int b = (int) (((rb & 0xffff) + half) * boxScale >>> 32);
+                final int color = (r << 16) | (gg << 8) | b;
+                final int index = y * width + x;
+                dst[index] = blend < 0 ? color : blend(color, previous[index]);
+                rbs[x] = 0;
+                gs[x] = 0;
+            }
+        }
+    }
+
+    private void filterRows(final int[] src, final int y0, final int y1) {
+        for (int y = y0; y < y1; ++y) {
+            final int row = y * srcWidth;
+            for (int x = 0; x < width; ++x) {
+                int rb = 0, g = 0;
+                for (int i = x * colTaps, end = i + colTaps, s = row + colStart[x]; i < end; ++i, ++s) {
+                    final int color = src[s];
+                    rb += (color & 0xff00ff) * colWeights[i];
+                    g += (color & 0xff00) * colWeights[i];
+                }
+                rows[y * width + x] = round(rb, g);
+            }
+        }
+    }
+
+    private void filterColumns(final int[] previous, final int[] dst, final int y0, final int y1) {
+        // As in resolveBox, a row of sums is added up a row at a time
+        final int[] rbs = new int[width], gs = new int[width];
+        for (int y = y0; y < y1; ++y) {
+            for (int i = y * rowTaps, end = i + rowTaps, row = rowStart[y] * width; i < end; ++i, row += width) {
+                final int weight = rowWeights[i];
+                for (int x = 0; x < width; ++x) {
+                    final int color = rows[row + x];
+                    rbs[x] += (color & 0xff00ff) * weight;
+                    gs[x] += (color & 0xff00) * weight;
+                }
+            }
+            for (int x = 0; x < width; ++x) {
+                final int color = round(rbs[x], gs[x]);
+                final int index = y * width + x;
+                dst[index] = blend < 0 ? color : blend(color, previous[index]);
+                rbs[x] = 0;
+                gs[x] = 0;
+            }
+        }
+    }
+
+    // Turn weighted sums back into a color, rounding to nearest
+    private static int round(final int rb, final int g) {
+        return (((rb + 0x800080) >>> WEIGHT_BITS) & 0xff00ff) | (((g + 0x8000) >>> WEIGHT_BITS) & 0xff00);
+    }
+
+    // Mix a new color into the previous frame's
+    private int blend(final int color, final int old) {
+        final int rb = (color & 0xff00ff) * blend + (old & 0xff00ff) * (256 - blend);
+        final int g = (color & 0xff00) * blend + (old & 0xff00) * (256 - blend);
+        return round(rb, g);
+    }
+
+}
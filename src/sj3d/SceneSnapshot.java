@@ -0,0 +1,58 @@
+package sj3d;
+
+/**
+ * What a frame needs from the scene, taken as it stands when the frame is
+ * started: a copy of the camera, and the transformation, current frame and
+ * material of each model, along with snapshots of the instance batches.
+ * Every frame is rendered from a snapshot, so other threads may move models,
+ * and add or remove them, while it is drawn; a pipelined frame is even set up
+ * on another thread while the caller moves the scene on for the next frame.
+ *
+ * <p>Taking a snapshot copies little: the model array is one the world
+ * never changes, and each model's matrix is one its model never changes (see
+ * {@link Object3D#getMatrix()}), so both are only referred to, and the
+ * snapshot of a batch shares its arrays until the batch changes (see
+ * {@link InstanceBatch}).  Meshes and materials are referred to as well, and
+ * must not change while a snapshot of them is being rendered; normals
+ * assigned to the deprecated {@link Vertex#n} of views are written back to
+ * their meshes here, before the frame is drawn.
+ *
+ * @see FramePipeline
+ */
+final class SceneSnapshot {
+
+    final Camera camera;
+    final Model[] models;
+    final Mesh.Frame[] frames;
+    final Material[] materials;
+    final Matrix[] matrices;
+    final InstanceBatch[] batches;
+
+    SceneSnapshot(final Camera camera, final Model[] models, final InstanceBatch[] batches) {
+        this.camera = new Camera(camera);
+        this.models = models;
+        frames = new Mesh.Frame[models.length];
+        materials = new Material[models.length];
+        matrices = new Matrix[models.length];
+        for (int i = 0; i < models.length; ++i) {
+            final Model model = models[i];
+            frames[i] = syncViews(model.frameData());
+            materials[i] = model.material;
+            matrices[i] = model.getMatrix();
+        }
+        this.batches = new InstanceBatch[batches.length];
+        for (int i = 0; i < batches.length; ++i) {
+            this.batches[i] = new InstanceBatch(batches[i]);
+            syncViews(this.batches[i].frameData());
+        }
+    }
+
+    // Write back normals assigned to old-style vertex views (see Vertex#n)
+    private static Mesh.Frame syncViews(final Mesh.Frame frame) {
+        if (frame != null) {
+            frame.syncViews();
+        }
+        return frame;
+    }
+
+}
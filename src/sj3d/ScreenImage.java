@@ -0,0 +1,26 @@
+package sj3d;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * The image a {@link World} renders into when the caller wants an
+ * <code>Image</code> back.  It is kept apart from <code>World</code> so
+ * that worlds rendering into plain pixels never load any AWT classes.
+ */
+final class ScreenImage {
+
+    private final BufferedImage image;
+    final int[] pixels; // the pixels backing the image
+
+    ScreenImage(final int width, final int height) {
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    Image getImage() {
+        return image;
+    }
+
+}
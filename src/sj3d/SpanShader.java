@@ -0,0 +1,77 @@
+package sj3d;
+
+/**
+ * Shades a horizontal span of an untextured triangle several pixels at a time.
+ * Implementations give exactly the same pixels as the scalar loops generated
+ * into {@link Renderer}.
+ *
+ * @see #load()
+ */
+abstract class SpanShader {
+
+    /**
+     * The shortest span worth handing to a span shader
+     */
+    static final int MIN_LENGTH = 16;
+
+    /**
+     * Get a span shader built on the <code>jdk.incubator.vector</code>
+     * module, if the module is available.  It must be added to the runtime
+     * with <code>--add-modules jdk.incubator.vector</code>.
+     *
+     * @return a span shader, or <code>null</code> if none can be used
+     */
+    static SpanShader load() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return null;
+        }
+        try {
+            return (SpanShader) Class.forName("sj3d.VectorSpanShader").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Shade a span of a flat-shaded triangle.  The depth of pixel
+     * <code>x</code> is <code>sz + max(x - sx, 0) * dz</code>.
+     *
+     * @param zbuf     the depth buffer
+     * @param pixels   the color buffer
+     * @param idbuf    the model ID buffer, or <code>null</code>
+     * @param modelId  the ID of the model the triangle belongs to
+     * @param row      the index of the first pixel of the row
+     * @param x0       the first pixel of the span (inclusive)
+     * @param x1       the last pixel of the span (exclusive)
+     * @param sx       the x-coordinate of the start of the span
+     * @param sz       the depth at the start of the span
+     * @param dz       the change in depth per pixel
+     * @param color    the color, including alpha
+     * @return the number of pixels that passed the depth test
+     */
+    abstract int flat(float[] zbuf, int[] pixels, int[] idbuf, int modelId,
+            int row, int x0, int x1, float sx, float sz, float dz, int color);
+
+    /**
+     * Shade a span of a smooth-shaded triangle.  The color of pixel
+     * <code>x</code> is the shade at light level
+     * <code>(lightStart + (x - lightX) * lightStep) &gt;&gt; 16</code>,
+     * clamped to between <code>lightLow</code> and <code>lightHigh</code>.
+     *
+     * @param lightX     the pixel the light levels are counted from
+     * @param lightStart the light level at <code>lightX</code>, in 16.16 fixed
+     *                   point and rounded
+     * @param lightStep  the change in light level per pixel, in 16.16 fixed
+     *                   point
+     * @param lightLow   the lowest light level
+     * @param lightHigh  the highest light level
+     * @param shades     the material's shades for each light level
+     * @param alpha      the alpha bits to add to every color
+     * @see #flat
+     */
+    abstract int smooth(float[] zbuf, int[] pixels, int[] idbuf, int modelId,
+            int row, int x0, int x1, float sx, float sz, float dz,
+            int lightX, int lightStart, int lightStep, int lightLow, int lightHigh,
+            int[] shades, int alpha);
+
+}
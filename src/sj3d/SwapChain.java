@@ -0,0 +1,77 @@
+package sj3d;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Three images that finished frames are handed through from the rendering
+ * thread to the thread showing them, without either waiting for the other
+ * (see {@link RenderSettings#setTripleBuffering(boolean)}).
+ *
+ * <p>At any time the renderer owns one image, the back, which it fills with
+ * the next frame; the reader owns another, the front, which it shows; and
+ * the third holds the newest finished frame the reader has not taken yet,
+ * if any.  Publishing a frame swaps the back with the third image, and
+ * taking the newest frame swaps the front with it, each with one atomic
+ * operation.  The renderer and reader each never touch the other's image,
+ * so frames are never torn, and neither side ever waits.
+ */
+final class SwapChain {
+
+    // Marks a finished frame not yet taken, alongside the image index
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final ScreenImage[] images;
+    private final AtomicInteger ready = new AtomicInteger(1); // the third image
+    private int back = 2; // only used by the renderer
+    private int published = 2; // the renderer's last published image
+    private int front = 0; // only used by the reader
+
+    SwapChain(final int width, final int height) {
+        images = new ScreenImage[] {
+                new ScreenImage(width, height),
+                new ScreenImage(width, height),
+                new ScreenImage(width, height),
+        };
+    }
+
+    /**
+     * Get the pixels of the image to draw the next frame into.
+     */
+    int[] back() {
+        return images[back].pixels;
+    }
+
+    /**
+     * Get the pixels of the last frame published, or of the back image if
+     * none has been yet.  The reader only ever reads them, and they cannot
+     * become the back image again before the next frame is published, so the
+     * renderer may read them while drawing the next frame, to blend it over
+     * them.
+     */
+    int[] previous() {
+        return images[published].pixels;
+    }
+
+    /**
+     * Hand the back image over as the newest finished frame, and take the
+     * next back image.
+     */
+    void publish() {
+        published = back;
+        back = ready.getAndSet(back | FRESH) & INDEX;
+    }
+
+    /**
+     * Get the image with the newest finished frame, first swapping it in if
+     * one has been published since the last call.  The image stays unchanged
+     * until the next call.
+     */
+    ScreenImage front() {
+        if ((ready.get() & FRESH) != 0) {
+            front = ready.getAndSet(front) & INDEX;
+        }
+        return images[front];
+    }
+
+}
@@ -3,15 +3,40 @@ package sj3d;
 import java.awt.Image;
 import java.awt.image.PixelGrabber;
 
+/**
+ * An image to paint on models. Textures whose width and height are both
+ * powers of two can be mipmapped and repeat across the model, when enabled in
+ * the {@link RenderSettings}; others are always drawn at full size, with
+ * texture coordinates clamped to the edges.
+ */
 public final class Texture {
 
+    /**
+     * log2 of the side of the tiles of tiled mipmap levels: a 4x4 tile of
+     * pixels fills a 64-byte cache line
+     */
+    static final int TILE_BITS = 2;
+
     public final int[] pixels;
     public final int width, height;
 
+    // log2 of the width and height when both are powers of two, or -1
+    final int widthShift, heightShift;
+
+    // The mipmap levels, each half the size of the one before down to 1x1,
+    // starting with pixels itself; built on first use
+    private volatile int[][] levels;
+
+    // The same levels stored in tiles; built on first use
+    private volatile int[][] tiledLevels;
+
     public Texture(int width, int height) {
         pixels = new int[width * height];
         this.width = width;
         this.height = height;
+        final boolean powerOfTwo = Integer.bitCount(width) == 1 && Integer.bitCount(height) == 1;
+        widthShift = powerOfTwo ? Integer.numberOfTrailingZeros(width) : -1;
+        heightShift = powerOfTwo ? Integer.numberOfTrailingZeros(height) : -1;
     }
 
     public Texture(Image img, int width, int height) {
@@ -25,6 +50,107 @@ public final class Texture {
             grabber.abortGrabbing();
             e.printStackTrace();
         }
+        updateMipmaps();
+    }
+
+    /**
+     * Whether the width and height are both powers of two, so the texture can
+     * be mipmapped and repeated.
+     */
+    public boolean isPowerOfTwo() {
+        return widthShift >= 0;
+    }
+
+    /**
+     * Rebuild the smaller mipmap levels from the pixels. Call this after
+     * changing the pixels of a texture that has already been drawn, or the
+     * change will only show up close by (or not at all, with texture
+     * tiling).
+     */
+    public void updateMipmaps() {
+        if (isPowerOfTwo()) {
+            levels = buildLevels();
+            tiledLevels = tiledLevels == null ? null : buildTiledLevels();
+        }
+    }
+
+    /**
+     * Get the mipmap levels of a power-of-two texture. Level <i>n</i> is
+     * <code>width &gt;&gt; n</code> by <code>height &gt;&gt; n</code> pixels
+     * (at least 1).
+     */
+    int[][] getLevels() {
+        int[][] result = levels;
+        if (result == null) {
+            // Racing threads build the same levels, so either may win
+            result = buildLevels();
+            levels = result;
+        }
+        return result;
+    }
+
+    /**
+     * Get the mipmap levels of a power-of-two texture stored in tiles. Each
+     * level is split into square tiles of <code>1 &lt;&lt; TILE_BITS</code>
+     * pixels on a side (or of the level's shorter side, if less). The tiles
+     * are stored row by row, and so are the pixels within each tile.
+     */
+    int[][] getTiledLevels() {
+        int[][] result = tiledLevels;
+        if (result == null) {
+            result = buildTiledLevels();
+            tiledLevels = result;
+        }
+        return result;
+    }
+
+    private int[][] buildTiledLevels() {
+        final int[][] rows = getLevels();
+        final int[][] result = new int[rows.length][];
+        for (int level = 0; level < rows.length; ++level) {
+            final int ushift = Math.max(widthShift - level, 0), vshift = Math.max(heightShift - level, 0);
+            final int tileShift = Math.min(TILE_BITS, Math.min(ushift, vshift)), tileMask = (1 << tileShift) - 1;
+            final int[] src = rows[level], dst = new int[src.length];
+            for (int i = 0; i < src.length; ++i) {
+                final int x = i & ((1 << ushift) - 1), y = i >> ushift;
+                dst[((y >> tileShift) << (ushift + tileShift)) | ((x >> tileShift) << (2 * tileShift))
+                        | ((y & tileMask) << tileShift) | (x & tileMask)] = src[i];
+            }
+            result[level] = dst;
+        }
+        return result;
+    }
+
+    private int[][] buildLevels() {
+        final int[][] result = new int[Math.max(widthShift, heightShift) + 1][];
+        result[0] = pixels;
+        for (int level = 1; level < result.length; ++level) {
+            final int[] src = result[level - 1];
+            final int srcWidth = Math.max(width >> (level - 1), 1), srcHeight = Math.max(height >> (level - 1), 1);
+            final int w = Math.max(width >> level, 1), h = Math.max(height >> level, 1);
+            final int[] dst = new int[w * h];
+            for (int y = 0; y < h; ++y) {
+                // A side that is already 1 pixel long averages that pixel with itself
+                final int row0 = (2 * y) * srcWidth, row1 = Math.min(2 * y + 1, srcHeight - 1) * srcWidth;
+                for (int x = 0; x < w; ++x) {
+                    final int x0 = 2 * x, x1 = Math.min(2 * x + 1, srcWidth - 1);
+                    dst[y * w + x] = average(src[row0 + x0], src[row0 + x1], src[row1 + x0], src[row1 + x1]);
+                }
+            }
+            result[level] = dst;
+        }
+        return result;
+    }
+
+    // Average four ARGB colors channel by channel, rounding to nearest
+    private static int average(final int c0, final int c1, final int c2, final int c3) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            final int sum = ((c0 >>> shift) & 0xff) + ((c1 >>> shift) & 0xff)
+                    + ((c2 >>> shift) & 0xff) + ((c3 >>> shift) & 0xff);
+            result |= ((sum + 2) >> 2) << shift;
+        }
+        return result;
     }
 
 }
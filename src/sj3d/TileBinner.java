@@ -0,0 +1,155 @@
+package sj3d;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Collects the triangle records of a frame and sorts them into the square
+ * screen tiles they overlap.  Each tile can then be rasterized on its own
+ * thread, since no two tiles share a pixel.
+ *
+ * <p>Triangles keep their submission order within a tile, so the depth test
+ * resolves ties the same way it does when every triangle is drawn right
+ * away.  Together with {@link Renderer#renderTriangle} producing the same
+ * pixels regardless of the clipping rectangle, this makes the tiled output
+ * identical to the single-threaded output.
+ */
+final class TileBinner {
+
+    static final int TILE_SHIFT = 6;
+    static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+    // Rows shaded together by one task of the deferred shading pass
+    private static final int SHADE_ROWS = 8;
+
+    private final int width, height;
+    private final int cols, rows;
+
+    // Triangle records, and the material & model ID of each triangle
+    private float[] triangles = new float[256 * Renderer.TRIANGLE_STRIDE];
+    private Material[] materials = new Material[256];
+    private int[] modelIds = new int[256];
+    private int count;
+
+    // Indices of the triangles overlapping each tile
+    private final int[][] bins;
+    private final int[] binSizes;
+
+    TileBinner(final int width, final int height) {
+        this.width = width;
+        this.height = height;
+        cols = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+        rows = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+        bins = new int[cols * rows][16];
+        binSizes = new int[cols * rows];
+    }
+
+    /**
+     * Forget all triangles.
+     */
+    void clear() {
+        Arrays.fill(materials, 0, count, null);
+        Arrays.fill(binSizes, 0);
+        count = 0;
+    }
+
+    /**
+     * Add a triangle to every tile it overlaps.
+     *
+     * @param tri      the triangle record (copied)
+     * @param material the material of the triangle
+     * @param modelId  the ID of the model the triangle belongs to
+     */
+    void add(final float[] tri, final Material material, final int modelId) {
+
+        // Vertices are sorted by y, so only x needs a min/max.  The x-range
+        // is widened by a pixel to stay clear of rounding in the rasterizer.
+        final float x0 = Math.min(tri[Renderer.X], Math.min(
+                tri[Renderer.VERTEX_STRIDE + Renderer.X],
+                tri[2 * Renderer.VERTEX_STRIDE + Renderer.X]));
+        final float x1 = Math.max(tri[Renderer.X], Math.max(
+                tri[Renderer.VERTEX_STRIDE + Renderer.X],
+                tri[2 * Renderer.VERTEX_STRIDE + Renderer.X]));
+        final int minX = (int) Math.max(x0 - 1, 0);
+        final int maxX = (int) Math.min(x1 + 1, width - 1);
+        final int minY = Math.max((int) tri[Renderer.Y], 0);
+        final int maxY = Math.min((int) tri[2 * Renderer.VERTEX_STRIDE + Renderer.Y], height - 1);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        if (count == materials.length) {
+            final int capacity = count * 2;
+            triangles = Arrays.copyOf(triangles, capacity * Renderer.TRIANGLE_STRIDE);
+            materials = Arrays.copyOf(materials, capacity);
+            modelIds = Arrays.copyOf(modelIds, capacity);
+        }
+        System.arraycopy(tri, 0, triangles, count * Renderer.TRIANGLE_STRIDE, Renderer.TRIANGLE_STRIDE);
+        materials[count] = material;
+        modelIds[count] = modelId;
+
+        for (int ty = minY >> TILE_SHIFT, tyEnd = maxY >> TILE_SHIFT; ty <= tyEnd; ++ty) {
+            for (int tx = minX >> TILE_SHIFT, txEnd = maxX >> TILE_SHIFT; tx <= txEnd; ++tx) {
+                final int tile = ty * cols + tx;
+                int[] bin = bins[tile];
+                if (binSizes[tile] == bin.length) {
+                    bin = bins[tile] = Arrays.copyOf(bin, bin.length * 2);
+                }
+                bin[binSizes[tile]++] = count;
+            }
+        }
+
+        ++count;
+    }
+
+    /**
+     * Rasterize every tile, spread across the threads of <code>pool</code>.
+     *
+     * @param renderer the renderer that owns the buffers to draw into
+     * @param pool     the pool to run on
+     */
+    void render(final Renderer renderer, final ForkJoinPool pool) {
+        Parallel.forEach(pool, cols * rows, tile -> renderTile(renderer, tile));
+    }
+
+    /**
+     * Rasterize every tile's visibility, then shade the visible pixels a band
+     * of rows at a time, both spread across the threads of <code>pool</code>.
+     *
+     * @param renderer the renderer that owns the buffers to draw into
+     * @param pool     the pool to run on, or <code>null</code> to run on
+     *                 this thread
+     */
+    void renderDeferred(final Renderer renderer, final ForkJoinPool pool) {
+        Parallel.forEach(pool, cols * rows, tile -> renderTileVisibility(renderer, tile));
+        Parallel.forEach(pool, (height + SHADE_ROWS - 1) / SHADE_ROWS, band -> renderer.shadeRows(
+                triangles, materials, band * SHADE_ROWS, Math.min((band + 1) * SHADE_ROWS, height)));
+    }
+
+    private void renderTileVisibility(final Renderer renderer, final int tile) {
+        final int[] bin = bins[tile];
+        final int x0 = (tile % cols) << TILE_SHIFT;
+        final int y0 = (tile / cols) << TILE_SHIFT;
+        final int x1 = Math.min(x0 + TILE_SIZE, width);
+        final int y1 = Math.min(y0 + TILE_SIZE, height);
+        for (int i = 0, l = binSizes[tile]; i < l; ++i) {
+            final int t = bin[i];
+            renderer.renderVisibility(modelIds[t], triangles, t * Renderer.TRIANGLE_STRIDE, t,
+                    x0, y0, x1, y1);
+        }
+    }
+
+    private void renderTile(final Renderer renderer, final int tile) {
+        final int[] bin = bins[tile];
+        final int x0 = (tile % cols) << TILE_SHIFT;
+        final int y0 = (tile / cols) << TILE_SHIFT;
+        final int x1 = Math.min(x0 + TILE_SIZE, width);
+        final int y1 = Math.min(y0 + TILE_SIZE, height);
+        for (int i = 0, l = binSizes[tile]; i < l; ++i) {
+            final int t = bin[i];
+            renderer.renderTriangle(modelIds[t], materials[t], triangles,
+                    t * Renderer.TRIANGLE_STRIDE, x0, y0, x1, y1);
+        }
+    }
+
+}
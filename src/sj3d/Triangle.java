@@ -4,32 +4,38 @@ public final class Triangle {
 
     private final int vertAindex, vertBindex, vertCindex;
     private final UVCoord uvA, uvB, uvC;
-    private final Vector n = new Vector();
     private Model parent;
+    private int index; // the index of the triangle in its parent, or -1 if not known
 
     public Triangle(Model p, int a, int b, int c, UVCoord uvA,
             UVCoord uvB, UVCoord uvC) {
-        vertAindex = a;
-        vertBindex = b;
-        vertCindex = c;
-        parent = p;
-        this.uvA = uvA;
-        this.uvB = uvB;
-        this.uvC = uvC;
-        calculateNormal();
+        this(p, -1, a, b, c, uvA, uvB, uvC);
     }
 
     public Triangle(Model p, int a, int b, int c) {
+        this(p, -1, a, b, c, null, null, null);
+    }
+
+    /**
+     * Create a view of a triangle of a model.
+     */
+    Triangle(Model p, int index, int a, int b, int c, UVCoord uvA,
+            UVCoord uvB, UVCoord uvC) {
+        this.index = index;
         vertAindex = a;
         vertBindex = b;
         vertCindex = c;
         parent = p;
-        uvA = uvB = uvC = null;
-        calculateNormal();
+        this.uvA = uvA;
+        this.uvB = uvB;
+        this.uvC = uvC;
     }
 
     public void setParent(Model p) {
-        parent = p;
+        if (p != parent) {
+            parent = p;
+            index = -1;
+        }
     }
 
     public Vertex getVertexA() {
@@ -44,6 +50,18 @@ public final class Triangle {
         return parent.getVertex(vertCindex);
     }
 
+    int getIndexA() {
+        return vertAindex;
+    }
+
+    int getIndexB() {
+        return vertBindex;
+    }
+
+    int getIndexC() {
+        return vertCindex;
+    }
+
     public UVCoord getUVA() {
         return uvA;
     }
@@ -56,19 +74,28 @@ public final class Triangle {
         return uvC;
     }
 
-    private Vector calculateNormal() {
-        Vertex a = getVertexA();
-        Vertex b = getVertexB();
-        Vertex c = getVertexC();
+    /**
+     * Get the face normal in the parent model's current frame.  For a
+     * triangle of a model, this is a copy of the normal the model keeps for
+     * culling and lighting, so it costs no more than the copy.
+     *
+     * @return a new vector
+     */
+    public Vector getNormal() {
+        final Mesh.Frame frame = parent.frameData();
+        if (index >= 0) {
+            final float[] normals = frame.faceNormals(parent.mesh);
+            final int i = index * 3;
+            return new Vector(normals[i], normals[i + 1], normals[i + 2]);
+        }
+        final float[] p = frame.positions;
+        final int a = vertAindex * 3, b = vertBindex * 3, c = vertCindex * 3;
+        final Vector n = new Vector();
         n.setToCrossProduct(
-                (a.getX() - b.getX()), (a.getY() - b.getY()), (a.getZ() - b.getZ()),
-                (a.getX() - c.getX()), (a.getY() - c.getY()), (a.getZ() - c.getZ()));
+                p[a] - p[b], p[a + 1] - p[b + 1], p[a + 2] - p[b + 2],
+                p[a] - p[c], p[a + 1] - p[c + 1], p[a + 2] - p[c + 2]);
         n.normalize();
         return n;
     }
 
-    public Vector getNormal() {
-        return calculateNormal();
-    }
-
 }
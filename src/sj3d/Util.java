@@ -0,0 +1,55 @@
+package sj3d;
+
+class Util {
+
+    public static float clamp(float value, float min, float max) {
+        return Math.min(Math.max(value, min), max);
+    }
+
+    // See gen-util.py
+    
+    public static  void fill(int[] buffer, int value) {
+        int size = buffer.length - 1;
+        int cleared = 1;
+        int index = 1;
+        buffer[0] = value;
+        while (cleared < size) {
+            System.arraycopy(buffer, 0, buffer, index, cleared);
+            size -= cleared;
+            index += cleared;
+            cleared <<= 1;
+        }
+        System.arraycopy(buffer, 0, buffer, index, size);
+    }
+    
+    public static  void fill(float[] buffer, float value) {
+        int size = buffer.length - 1;
+        int cleared = 1;
+        int index = 1;
+        buffer[0] = value;
+        while (cleared < size) {
+            System.arraycopy(buffer, 0, buffer, index, cleared);
+            size -= cleared;
+            index += cleared;
+            cleared <<= 1;
+        }
+        System.arraycopy(buffer, 0, buffer, index, size);
+    }
+    
+    public static <T> void fill(T[] buffer, T value) {
+        int size = buffer.length - 1;
+        int cleared = 1;
+        int index = 1;
+        buffer[0] = value;
+        while (cleared < size) {
+            System.arraycopy(buffer, 0, buffer, index, cleared);
+            size -= cleared;
+            index += cleared;
+            cleared <<= 1;
+        }
+        System.arraycopy(buffer, 0, buffer, index, size);
+    }
+    
+
+}
+
@@ -0,0 +1,128 @@
+package sj3d;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A span shader that works on up to eight pixels at once, depending on the
+ * hardware's vector size.  Only loaded through
+ * {@link SpanShader#load()}, so that the rest of the library works without
+ * the incubator module.
+ *
+ * <p>Only operations the JIT turns into vector instructions are used.  The
+ * pixels that pass the depth test are written with masked stores, so pixels
+ * that fail it are not touched, and they are counted from the mask.  The end
+ * of a span that does not fill a vector is shaded one pixel at a time.
+ * Smooth shades are gathered from the material's table by light level, with
+ * the levels kept in a buffer for each thread, since tiles of one frame are
+ * shaded on several threads at once.
+ */
+final class VectorSpanShader extends SpanShader {
+
+    // The hardware's preferred size, but at most 256 bits: wider vectors are
+    // missing some of the instructions used here on current JITs
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED.vectorBitSize() > 256
+            ? FloatVector.SPECIES_256 : FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = FLOATS.withLanes(int.class);
+    private static final int LENGTH = FLOATS.length();
+
+    // 0, 1, 2, ... in each lane
+    private static final FloatVector LANES = (FloatVector) IntVector.zero(INTS).addIndex(1)
+            .convert(VectorOperators.I2F, 0);
+
+    // The light level of each lane, for gathering shades
+    private static final ThreadLocal<int[]> LEVELS = ThreadLocal.withInitial(() -> new int[LENGTH]);
+
+    @Override
+    int flat(final float[] zbuf, final int[] pixels, final int[] idbuf, final int modelId,
+            final int row, final int x0, final int x1, final float sx, final float sz, final float dz,
+            final int color) {
+        final IntVector colors = IntVector.broadcast(INTS, color);
+        final IntVector ids = IntVector.broadcast(INTS, modelId);
+        int shaded = 0;
+        int x = x0;
+        for (; x + LENGTH <= x1; x += LENGTH) {
+            final int index = row + x;
+            final FloatVector span = LANES.add(x).sub(sx).max(0);
+            final FloatVector z = span.mul(dz).add(sz);
+            final FloatVector old = FloatVector.fromArray(FLOATS, zbuf, index);
+            final VectorMask<Float> pass = old.lt(z);
+            if (pass.anyTrue()) {
+                store(zbuf, pixels, idbuf, index, z, colors, ids, pass);
+                shaded += pass.trueCount();
+            }
+        }
+        for (; x < x1; ++x) {
+            final int index = row + x;
+            final float z = sz + Math.max(x - sx, 0) * dz;
+            if (zbuf[index] < z) {
+                zbuf[index] = z;
+                pixels[index] = color;
+                if (idbuf != null) {
+                    idbuf[index] = modelId;
+                }
+                ++shaded;
+            }
+        }
+        return shaded;
+    }
+
+    @Override
+    int smooth(final float[] zbuf, final int[] pixels, final int[] idbuf, final int modelId,
+            final int row, final int x0, final int x1, final float sx, final float sz, final float dz,
+            final int lightX, final int lightStart, final int lightStep, final int lightLow,
+            final int lightHigh, final int[] shades, final int alpha) {
+        final IntVector steps = IntVector.zero(INTS).addIndex(1).mul(lightStep);
+        final IntVector ids = IntVector.broadcast(INTS, modelId);
+        final int[] levels = LEVELS.get();
+        int shaded = 0;
+        int x = x0;
+        for (; x + LENGTH <= x1; x += LENGTH) {
+            final int index = row + x;
+            final FloatVector span = LANES.add(x).sub(sx).max(0);
+            final FloatVector z = span.mul(dz).add(sz);
+            final FloatVector old = FloatVector.fromArray(FLOATS, zbuf, index);
+            final VectorMask<Float> pass = old.lt(z);
+            if (pass.anyTrue()) {
+                steps.add(lightStart + (x - lightX) * lightStep)
+                        .lanewise(VectorOperators.ASHR, Renderer.LIGHT_STEP_BITS)
+                        .max(lightLow).min(lightHigh).intoArray(levels, 0);
+                final IntVector colors = IntVector.fromArray(INTS, shades, 0, levels, 0).or(alpha);
+                store(zbuf, pixels, idbuf, index, z, colors, ids, pass);
+                shaded += pass.trueCount();
+            }
+        }
+        for (; x < x1; ++x) {
+            final int index = row + x;
+            final float z = sz + Math.max(x - sx, 0) * dz;
+            if (zbuf[index] < z) {
+                final int level = (lightStart + (x - lightX) * lightStep) >> Renderer.LIGHT_STEP_BITS;
+                zbuf[index] = z;
+                pixels[index] = shades[Math.min(Math.max(level, lightLow), lightHigh)] | alpha;
+                if (idbuf != null) {
+                    idbuf[index] = modelId;
+                }
+                ++shaded;
+            }
+        }
+        return shaded;
+    }
+
+    /**
+     * Store the depths, colors and model IDs of the pixels that passed the
+     * depth test.
+     */
+    private static void store(final float[] zbuf, final int[] pixels, final int[] idbuf, final int index,
+            final FloatVector z, final IntVector colors, final IntVector ids, final VectorMask<Float> pass) {
+        z.intoArray(zbuf, index, pass);
+        final VectorMask<Integer> passInts = pass.cast(INTS);
+        colors.intoArray(pixels, index, passInts);
+        if (idbuf != null) {
+            ids.intoArray(idbuf, index, passInts);
+        }
+    }
+
+}
@@ -1,20 +1,56 @@
 package sj3d;
 
+/**
+ * A vertex position, with an optional vertex normal for smooth shading.
+ *
+ * <p>Vertices returned by {@link Model#getVertex(int)},
+ * {@link Model#addVertex(float, float, float)} and the list returned by
+ * {@link Model#addFrame()} are views of a vertex of one of a model's frames:
+ * {@link #setNormal(float, float, float)} changes the model, and
+ * {@link #getNormal()} reads it.  Positions never change once added, so
+ * <code>x</code>, <code>y</code> and <code>z</code> are final.  Other
+ * vertices hold their own normal, used when they are added with
+ * {@link Model#addVertex(Vertex)}.
+ */
 public final class Vertex {
 
     public final float x, y, z;
+
+    /**
+     * The vertex normal, or <code>null</code> for none.
+     *
+     * <p>For a view of a model's vertex, a normal assigned here reaches the
+     * model when the view is next read or written through
+     * {@link #getNormal()} or {@link #setNormal(Vector)}, or when the next
+     * frame starts if the view was handed out since the last one; later
+     * assignments are only seen through the view itself.
+     *
+     * @deprecated use {@link #getNormal()} and
+     *             {@link #setNormal(float, float, float)}, which always reach
+     *             the model
+     */
+    @Deprecated
     public Vector n;
 
-    float projX, projY, projZ;
+    // The frame and index of the vertex this is a view of, or null
+    private final Mesh.Frame frame;
+    private final int index;
+
+    // For a view, the normal as last written to or read from the frame, to
+    // tell when n has been changed; guarded by the frame
+    private Vector known;
+    private float knownX, knownY, knownZ;
 
     public Vertex() {
-        x = y = z = 0.0f;
+        this(0, 0, 0);
     }
 
     public Vertex(float x, float y, float z) {
         this.x = x;
         this.y = y;
         this.z = z;
+        frame = null;
+        index = -1;
     }
 
     public Vertex(float x, float y, float z, Vector n) {
@@ -22,6 +58,21 @@ public final class Vertex {
         this.n = n;
     }
 
+    /**
+     * Create a view of a vertex of a frame.  Only the frame creates views
+     * (see {@link Mesh.Frame#view(int)}), while holding its lock.
+     */
+    Vertex(Mesh.Frame frame, int index) {
+        final float[] p = frame.positions;
+        x = p[index * 3];
+        y = p[index * 3 + 1];
+        z = p[index * 3 + 2];
+        this.frame = frame;
+        this.index = index;
+        n = known = frame.normal(index);
+        remember();
+    }
+
     public float getX() {
         return x;
     }
@@ -34,6 +85,82 @@ public final class Vertex {
         return z;
     }
 
+    /**
+     * Get the vertex normal.  For a view of a model's vertex, the result is
+     * a copy of the model's normal, so changing it does not change the
+     * model; use {@link #setNormal(float, float, float)} for that.
+     *
+     * @return the normal, or <code>null</code> if the vertex has none
+     */
+    public Vector getNormal() {
+        if (frame == null) {
+            return n;
+        }
+        synchronized (frame) {
+            sync();
+            return n == null ? null : new Vector(n.x, n.y, n.z);
+        }
+    }
+
+    /**
+     * Set the vertex normal, in the model too if this is a view of a model's
+     * vertex.
+     *
+     * @param n
+     *            the normal, or <code>null</code> for none
+     */
+    public void setNormal(Vector n) {
+        if (frame == null) {
+            this.n = n;
+        } else {
+            synchronized (frame) {
+                this.n = n == null ? null : new Vector(n.x, n.y, n.z);
+                sync();
+            }
+        }
+    }
+
+    /**
+     * Set the vertex normal, in the model too if this is a view of a model's
+     * vertex.
+     */
+    public void setNormal(float nx, float ny, float nz) {
+        setNormal(new Vector(nx, ny, nz));
+    }
+
+    /**
+     * Bring a view and its vertex into step: write <code>n</code> to the
+     * frame if it has been changed since it was last known, or else read the
+     * normal from the frame in case it was set another way.  The caller
+     * holds the frame's lock.
+     */
+    void sync() {
+        final Vector n = this.n;
+        if (n != known || (n != null && (n.x != knownX || n.y != knownY || n.z != knownZ))) {
+            if (n == null) {
+                frame.setNormal(index, 0, 0, 0);
+            } else {
+                frame.setNormal(index, n.x, n.y, n.z);
+            }
+            known = n;
+        } else {
+            final Vector current = frame.normal(index);
+            if (current == null ? n != null
+                    : n == null || n.x != current.x || n.y != current.y || n.z != current.z) {
+                this.n = known = current;
+            }
+        }
+        remember();
+    }
+
+    private void remember() {
+        if (known != null) {
+            knownX = known.x;
+            knownY = known.y;
+            knownZ = known.z;
+        }
+    }
+
     public String toString() {
         return "Vertex (" + x + ", " + y + ", " + z + ")";
     }
@@ -1,11 +1,12 @@
 package sj3d;
 
-import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.RenderingHints;
-import java.awt.Toolkit;
-import java.awt.image.BufferedImage;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A top-level container for everything that goes into a 3D scene.
@@ -13,32 +14,61 @@ import java.util.ArrayList;
  * In particular:
  * <ul>
  *   <li>Models that get rendered</li>
+ *   <li>Batches of instances of models</li>
  *   <li>A camera for the view perspective</li>
  *   <li>Render settings</li>
  * </ul>
  *
+ * <p>A world either renders into an image, or, for callers that have no use
+ * for AWT such as servers generating frames, into pixels they supply.  The
+ * latter never loads any <code>java.awt</code> classes.
+ *
+ * <p>Models and batches may be added and removed, and models moved, from any
+ * thread, even while a frame is being rendered.  Each frame renders a
+ * snapshot of the scene taken when it starts (see {@link #render()}), so
+ * simulation threads never need to hold the renderer off.
+ *
+ * <p>A world rendering on several threads keeps them until it is closed
+ * (see {@link #close()}), so close worlds that are no longer needed.
+ *
  * @see #render()
  * @see #getImage()
+ * @see #getPixels()
  */
-public final class World {
+public final class World implements AutoCloseable {
 
-    // Triangles & Vertices
-    private final ArrayList<Model> models;
+    // Triangles & Vertices.  Adding or removing models or batches replaces
+    // the whole array, so a frame keeps the arrays it started with.
+    private final AtomicReference<Model[]> models = new AtomicReference<>(new Model[0]);
+    private final AtomicReference<InstanceBatch[]> batches = new AtomicReference<>(new InstanceBatch[0]); // drawn after the models, with ID 0
+    private final ArrayList<Model> visibleModels; // models in view this frame; model ID i is entry i - 1
+    private int[] visible = new int[16]; // the scene index of each visible model
+    private boolean[] clipped = new boolean[16]; // whether each visible model crosses the frustum edge
+    private Model[] sortedScene = new Model[0]; // the models the sort order is of
+    private int[] order = new int[16]; // indices into sortedScene from near to far, as of the last frame
+    private float[] depths = new float[16]; // depth of each sorted model
 
     // Screen variables
     private final Camera camera; // view perspective
     private final int width, height;
-    private final int[] pixels; // color values of each pixel
+    private final int[] pixels; // color values of each pixel; only the first frame's when drawing straight into a swap chain
     private final float[] zbuf; // depth of object at each pixel
-    private final Model[] modelbuf; // Models at each pixel point
-    private final Image renderImage; // the image that gets rendered to
-    private final Image finalImage; // the image that gets returned
-    private final Graphics2D graphics;
-    private final Renderer renderer;
+    private final int[] idbuf; // ID of the model at each pixel, or null if picking is off
+    private final ScreenImage finalImage; // the image that gets returned, or null
+    private final SwapChain swapChain; // the images that get returned instead, or null
+    private final int[] finalPixels; // the pixels of the final image, or null if they are the swap chain's
+    private final IntBuffer target; // copied finalPixels to after each frame, or null
+    private final Resolver resolver; // turns pixels into finalPixels, or null if they are the same
+    private final Renderer renderer; // null when pipelining
     private final RenderSettings settings;
+    private final RenderStatistics statistics;
+    private final ForkJoinPool pool; // null when rendering on one thread
+    private final TileBinner bins; // null unless rendering tiles in parallel or deferred
+    private final DepthCompositor compositor; // null unless rendering models in parallel
+    private final FramePipeline pipeline; // null unless pipelining
 
     /**
-     * Create a world with custom render settings
+     * Create a world with custom render settings, rendering into an image.
      *
      * @param w
      *            the width of the screen
@@ -46,8 +76,68 @@ public final class World {
      *            the height of the screen
      * @param settings
      *            the <code>RenderSettings</code> object to use
+     * @see #getImage()
      */
     public World(int w, int h, RenderSettings settings) {
+        this(w, h, settings, true, null, null);
+    }
+
+    /**
+     * Create a world with custom render settings, rendering into the given
+     * array.  The array receives <code>w * h</code> colors in the form
+     * <code>0xRRGGBB</code>, row by row from the top, as
+     * {@link #getPixels()} describes.  No image is created, so the world
+     * loads no AWT classes.
+     *
+     * @param w
+     *            the width of the screen
+     * @param h
+     *            the height of the screen
+     * @param settings
+     *            the <code>RenderSettings</code> object to use
+     * @param pixels
+     *            the array to render into, at least <code>w * h</code> long
+     */
+    public World(int w, int h, RenderSettings settings, int[] pixels) {
+        this(w, h, settings, false, checkSize(pixels, pixels.length, w, h), null);
+    }
+
+    /**
+     * Create a world with custom render settings, rendering into the given
+     * buffer from index 0, as {@link #World(int, int, RenderSettings, int[])}
+     * does into an array.  Buffers backed by an array are rendered into
+     * directly; others, such as direct buffers, have each frame copied into
+     * them at the end of {@link #render()}.  The buffer's position is not
+     * used or changed.
+     *
+     * @param w
+     *            the width of the screen
+     * @param h
+     *            the height of the screen
+     * @param settings
+     *            the <code>RenderSettings</code> object to use
+     * @param pixels
+     *            the buffer to render into, with a limit of at least
+     *            <code>w * h</code>
+     */
+    public World(int w, int h, RenderSettings settings, IntBuffer pixels) {
+        this(w, h, settings, false, checkSize(backingArray(pixels), pixels.limit(), w, h), pixels);
+    }
+
+    // The array a buffer can be rendered into directly, or null
+    private static int[] backingArray(final IntBuffer buffer) {
+        return buffer.hasArray() && buffer.arrayOffset() == 0 ? buffer.array() : null;
+    }
+
+    private static int[] checkSize(final int[] pixels, final int size, final int w, final int h) {
+        if (size < w * h) {
+            throw new IllegalArgumentException("pixels too small: " + size + " (screen size is " + w * h + ")");
+        }
+        return pixels;
+    }
+
+    private World(int w, int h, RenderSettings settings, boolean image,
+            int[] dst, IntBuffer dstBuffer) {
         width = w;
         height = h;
         this.settings = settings;
@@ -55,25 +145,69 @@ public final class World {
         final int fullWidth = (int) (width * settings.aaFactor);
         final int fullHeight = (int) (height * settings.aaFactor);
 
-        finalImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        graphics = ((BufferedImage) finalImage).createGraphics();
-
-        if (settings.hasAA()) {
-            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        // Triple buffered worlds finish each frame straight into the next image
+        // of the swap chain, and hand it over
+        swapChain = image && settings.tripleBuffering ? new SwapChain(width, height) : null;
+        finalImage = image && swapChain == null ? new ScreenImage(width, height) : null;
+        if (swapChain != null) {
+            finalPixels = null;
+            target = null;
+        } else if (finalImage != null) {
+            finalPixels = finalImage.pixels;
+            target = null;
+        } else if (dst != null) {
+            finalPixels = dst;
+            target = null;
+        } else {
+            finalPixels = new int[width * height];
+            target = dstBuffer;
         }
 
+        // Without antialiasing or motion blur, the final image is drawn
+        // straight into.  Otherwise it is resolved from the pixels, scaled
+        // down or blended with the previous frame.
+        final boolean direct = !settings.hasAA() && !settings.hasMotionBlur();
+
         final int size = fullWidth * fullHeight;
 
-        pixels = new int[size];
+        // A pipelined frame is drawn while the one before is being looked at,
+        // so it never goes straight into the final image
+        pixels = direct && !settings.pipelining ? nextFinalPixels() : new int[size];
+        resolver = direct ? null : new Resolver(fullWidth, fullHeight, width, height, settings);
         zbuf = new float[size];
-        modelbuf = new Model[size];
-        renderer = new Renderer(fullWidth, fullHeight, pixels, zbuf, modelbuf,
-                settings);
-        renderImage = Toolkit.getDefaultToolkit().createImage(
-                new ImageProducer(fullWidth, fullHeight, pixels, settings));
+        idbuf = settings.picking && !settings.pipelining ? new int[size] : null;
+        statistics = new RenderStatistics(size);
+
+        renderer = settings.pipelining ? null : new Renderer(fullWidth, fullHeight, pixels, zbuf, idbuf,
+                settings, statistics);
 
-        models = new ArrayList<>();
+        if (settings.pipelining) {
+            // One thread sets a frame up while the others draw the one before
+            pool = new ForkJoinPool(Math.max(settings.threads, 2));
+            bins = null;
+            compositor = null;
+            pipeline = new FramePipeline(fullWidth, fullHeight, pixels, zbuf, width * height,
+                    resolver, settings, pool);
+        } else if (!settings.isMultithreaded()) {
+            pool = null;
+            bins = settings.deferredShading ? new TileBinner(fullWidth, fullHeight) : null;
+            compositor = null;
+            pipeline = null;
+        } else if (settings.parallelMode == RenderSettings.PARALLEL_MODELS
+                && !settings.deferredShading) {
+            pool = new ForkJoinPool(settings.threads);
+            bins = null;
+            compositor = new DepthCompositor(renderer, fullWidth, fullHeight,
+                    pixels, zbuf, idbuf, settings);
+            pipeline = null;
+        } else {
+            pool = new ForkJoinPool(settings.threads);
+            bins = new TileBinner(fullWidth, fullHeight);
+            compositor = null;
+            pipeline = null;
+        }
+
+        visibleModels = new ArrayList<>();
         camera = new Camera();
     }
 
@@ -83,7 +217,15 @@ public final class World {
      * the one closest to the camera is returned.
      *
      * <p>Always returns <code>null</code> before the first call to
-     * {@link #render()}.
+     * {@link #render()}, and when picking is turned off or pipelining is
+     * turned on in the {@link RenderSettings}.
+     *
+     * <p>Picking reads the buffers the next call to {@link #render()} draws
+     * into, so it must be done on the thread that calls
+     * <code>render()</code>, between calls.  With triple buffering, the most
+     * recently rendered image may be newer than the one {@link #getImage()}
+     * last returned, so a point picked on the image being shown may find a
+     * model that has moved since.
      *
      * @param x
      *            the x-coordinate
@@ -92,29 +234,132 @@ public final class World {
      * @return the model at the given coordinates, or <code>null</code>
      */
     public Model getModelAtPoint(final int x, final int y) {
-        return modelbuf[(int) ((float) y * settings.aaFactor * width
-                * settings.aaFactor + (float) x * settings.aaFactor)];
+        if (idbuf == null) {
+            return null;
+        }
+        final int i = (int) ((float) y * settings.aaFactor * width
+                * settings.aaFactor + (float) x * settings.aaFactor);
+        // The ID buffer is not cleared between frames; only pixels drawn on
+        // in the last frame have a depth.  Instances have no model.
+        return zbuf[i] == 0 || idbuf[i] == 0 ? null : visibleModels.get(idbuf[i] - 1);
     }
 
     /**
      * Render the scene as a 2D image.
      *
+     * <p>The frame shows the scene as it stands when this is called: models
+     * added, removed or moved by other threads meanwhile show up in the next
+     * frame.
+     *
+     * <p>When pipelining (see {@link RenderSettings#setPipelining(boolean)}),
+     * this starts rendering the scene as it stands, and returns once the
+     * frame started by the previous call is finished and is the image.
+     *
      * @see #getImage()
+     * @see #flush()
      */
     public void render() {
-        clearBuffers();
-        for (Model model : models) {
-            renderer.render(camera, model);
+        final SceneSnapshot scene = new SceneSnapshot(camera, models.get(), batches.get());
+        if (pipeline == null) {
+            renderFrame(scene);
+            present();
+        } else if (pipeline.render(scene, statistics, nextFinalPixels())) {
+            present();
+        }
+    }
+
+    /**
+     * Finish rendering the frame started by the last call to
+     * {@link #render()}, and make it the image.  Only pipelined worlds have a
+     * frame left to finish once <code>render()</code> returns; for others,
+     * this does nothing.
+     */
+    public void flush() {
+        if (pipeline != null && pipeline.flush(statistics, nextFinalPixels())) {
+            present();
         }
+    }
 
-        renderImage.flush();
-        if (settings.hasAA()) {
-            graphics.drawImage(renderImage, 0, 0, width, height, null);
+    /**
+     * Stop the threads this world renders on, once any frame they are
+     * rendering is finished.  The world must not be rendered after it is
+     * closed, but its last image and pixels can still be read.  Closing a
+     * world that renders on one thread, or closing it again, does nothing.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    // The pixels the next frame is finished into
+    private int[] nextFinalPixels() {
+        return swapChain != null ? swapChain.back() : finalPixels;
+    }
+
+    // Hand the frame just finished over to whoever shows it
+    private void present() {
+        if (target != null) {
+            target.put(0, finalPixels);
+        }
+        if (swapChain != null) {
+            swapChain.publish();
+        }
+    }
+
+    private void renderFrame(final SceneSnapshot scene) {
+        if (swapChain != null && resolver == null) {
+            // Drawn straight into the swap chain's next image
+            renderer.setPixels(swapChain.back());
+            if (compositor != null) {
+                compositor.setPixels(swapChain.back());
+            }
+        }
+        statistics.reset();
+        clearBuffers();
+        cullModels(scene);
+        final int count = visibleModels.size();
+        if (bins != null) {
+            bins.clear();
+            for (int i = 0; i < count; i++) {
+                renderModel(scene, i, bins);
+            }
+            for (InstanceBatch batch : scene.batches) {
+                renderer.render(scene.camera, batch, 0, 0, batch.size(), bins);
+            }
+            if (settings.deferredShading) {
+                bins.renderDeferred(renderer, pool);
+            } else {
+                bins.render(renderer, pool);
+            }
+        } else if (compositor != null) {
+            compositor.render(scene, visible, count, clipped, pool);
         } else {
-            graphics.drawImage(renderImage, 0, 0, null);
+            for (int i = 0; i < count; i++) {
+                renderModel(scene, i, null);
+            }
+            for (InstanceBatch batch : scene.batches) {
+                renderer.render(scene.camera, batch, 0, 0, batch.size(), null);
+            }
+        }
+
+        if (resolver != null) {
+            if (swapChain != null) {
+                resolver.resolve(pixels, swapChain.previous(), swapChain.back(), pool);
+            } else {
+                resolver.resolve(pixels, finalPixels, pool);
+            }
         }
     }
 
+    // Render the i-th visible model, with ID i + 1
+    private void renderModel(final SceneSnapshot scene, final int i, final TileBinner bins) {
+        final int model = visible[i];
+        renderer.render(scene.camera, scene, model, i + 1, 0, scene.models[model].numTriangles(),
+                clipped[i], bins);
+    }
+
     /**
      * Get the rendered image.
      *
@@ -125,11 +370,59 @@ public final class World {
      * need to retain a copy of a particular frame, you must copy the returned
      * image.
      *
+     * <p>Without antialiasing or motion blur, frames are rendered straight
+     * into this image, so getting it costs no copying.
+     *
+     * <p>With triple buffering (see
+     * {@link RenderSettings#setTripleBuffering(boolean)}), each call instead
+     * returns the image of the newest finished frame, which stays unchanged
+     * until the next call of this method or {@link #getPixels()}.  Those calls
+     * never wait for rendering, and may be made from another thread than the
+     * one calling {@link #render()}, one thread at a time.
+     *
      * @return the most recently rendered image
+     * @throws IllegalStateException
+     *             if the world renders into pixels supplied by the caller
      * @see #render()
      */
     public Image getImage() {
-        return finalImage;
+        if (swapChain != null) {
+            return swapChain.front().getImage();
+        }
+        if (finalImage == null) {
+            throw new IllegalStateException("world renders into the caller's pixels");
+        }
+        return finalImage.getImage();
+    }
+
+    /**
+     * Get the pixels of the rendered image, for callers that copy frames to
+     * the screen themselves.  The array holds <code>width * height</code>
+     * colors in the form <code>0xRRGGBB</code>, row by row from the top; the
+     * top 8 bits are unspecified.
+     *
+     * <p>The array is the one backing {@link #getImage()}, or the one the
+     * world was created with, and the same concerns apply: its contents are
+     * unspecified before the first call to {@link #render()}, which modifies
+     * it in-place.  For worlds created with a buffer that has no accessible
+     * array, it is the array each frame is copied from.  With triple
+     * buffering, it is the array backing the image {@link #getImage()} would
+     * return, and calling this method has the same effect.
+     *
+     * @return the pixels of the most recently rendered image
+     */
+    public int[] getPixels() {
+        return swapChain != null ? swapChain.front().pixels : finalPixels;
+    }
+
+    /**
+     * Get the counters for the most recently rendered frame.  The returned
+     * object is updated in-place by {@link #render()}.
+     *
+     * @return the render statistics
+     */
+    public RenderStatistics getStatistics() {
+        return statistics;
     }
 
     /**
@@ -149,7 +442,14 @@ public final class World {
      *            the intensity of the ambient light (usually 1)
      */
     public void setLighting(float x, float y, float z, float intensity, float ambient) {
+        if (pipeline != null) {
+            pipeline.setLighting(x, y, z, intensity, ambient);
+            return;
+        }
         renderer.setLighting(x, y, z, intensity, ambient);
+        if (compositor != null) {
+            compositor.setLighting(x, y, z, intensity, ambient);
+        }
     }
 
     /**
@@ -164,19 +464,187 @@ public final class World {
     }
 
     /**
-     * Add the given model to the scene
+     * Add the given model to the scene.  This may be called from any thread.
      *
      * @param m
      *            the model to add
      */
     public void addModel(Model m) {
-        models.add(m);
+        models.updateAndGet(scene -> with(scene, m));
+    }
+
+    /**
+     * Remove the given model from the scene.  This may be called from any
+     * thread; a frame being rendered meanwhile may still draw the model.
+     *
+     * @param m
+     *            the model to remove
+     * @return true if the model was in the scene
+     */
+    public boolean removeModel(Model m) {
+        return indexOf(models.getAndUpdate(scene -> without(scene, m)), m) >= 0;
+    }
+
+    /**
+     * Add the given batch of instances to the scene.  Batches are drawn after
+     * all the models, and instances are culled one by one, so they are not
+     * depth sorted (see {@link RenderSettings#setDepthSorting(boolean)}).
+     * This may be called from any thread, but the batch itself must only be
+     * changed between calls to {@link #render()}.
+     *
+     * @param batch
+     *            the batch to add
+     */
+    public void addBatch(InstanceBatch batch) {
+        batches.updateAndGet(scene -> with(scene, batch));
+    }
+
+    /**
+     * Remove the given batch of instances from the scene.  This may be
+     * called from any thread.
+     *
+     * @param batch
+     *            the batch to remove
+     * @return true if the batch was in the scene
+     */
+    public boolean removeBatch(InstanceBatch batch) {
+        return indexOf(batches.getAndUpdate(scene -> without(scene, batch)), batch) >= 0;
+    }
+
+    private static <T> T[] with(final T[] array, final T item) {
+        final T[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = item;
+        return result;
+    }
+
+    // The array without the first occurrence of the item, or the same array
+    // if it has none
+    private static <T> T[] without(final T[] array, final T item) {
+        final int i = indexOf(array, item);
+        if (i < 0) {
+            return array;
+        }
+        final T[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, i + 1, result, i, array.length - 1 - i);
+        return result;
+    }
+
+    private static int indexOf(final Object[] array, final Object item) {
+        for (int i = 0; i < array.length; ++i) {
+            if (array[i] == item) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Collect the models of a scene that are at least partly in view into
+     * <code>visibleModels</code> and <code>visible</code>, and note which of
+     * them cross the edge of the view.
+     */
+    private void cullModels(final SceneSnapshot scene) {
+        visibleModels.clear();
+        final int count = scene.models.length;
+        if (settings.depthSorting) {
+            sortModels(scene);
+            for (int i = 0; i < count; i++) {
+                cullModel(scene, order[i]);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                cullModel(scene, i);
+            }
+        }
+        statistics.models = visibleModels.size();
+        statistics.culledModels = count - visibleModels.size();
+    }
+
+    private void cullModel(final SceneSnapshot scene, final int model) {
+        final int result = renderer.testFrustum(scene.camera, scene, model);
+        if (result != Renderer.OUTSIDE) {
+            final int i = visibleModels.size();
+            if (i == clipped.length) {
+                clipped = Arrays.copyOf(clipped, i * 2);
+                visible = Arrays.copyOf(visible, i * 2);
+            }
+            clipped[i] = result == Renderer.CLIPPED;
+            visible[i] = model;
+            visibleModels.add(scene.models[model]);
+        }
+    }
+
+    /**
+     * Sort the models of a scene from near to far into <code>order</code>.
+     * The models start out in the order of the previous frame, so when the
+     * camera and models have moved little the insertion sort has next to
+     * nothing to do.
+     */
+    private void sortModels(final SceneSnapshot scene) {
+        final int count = scene.models.length;
+        if (scene.models != sortedScene) {
+            carryOrder(scene.models);
+        }
+
+        for (int i = 0; i < count; i++) {
+            final int model = order[i];
+            final float depth = renderer.viewDepth(scene.camera, scene, model);
+            int j = i;
+            for (; j > 0 && depths[j - 1] > depth; j--) {
+                order[j] = order[j - 1];
+                depths[j] = depths[j - 1];
+            }
+            order[j] = model;
+            depths[j] = depth;
+        }
+    }
+
+    /**
+     * Carry the sort order over to a scene that models were added to or
+     * removed from since the last frame: the models still in it keep their
+     * order, and new ones go at the end.
+     */
+    private void carryOrder(final Model[] scene) {
+        // The first index of each model in the new scene, and the next index
+        // of the same model after each index, for models added twice
+        final IdentityHashMap<Model, Integer> first = new IdentityHashMap<>();
+        final int[] next = new int[scene.length];
+        for (int i = scene.length - 1; i >= 0; i--) {
+            final Integer later = first.put(scene[i], i);
+            next[i] = later == null ? -1 : later;
+        }
+
+        final int[] newOrder = new int[Math.max(scene.length, 16)];
+        final boolean[] placed = new boolean[scene.length];
+        int count = 0;
+        for (int k = 0; k < sortedScene.length; k++) {
+            final Model model = sortedScene[order[k]];
+            final Integer i = first.get(model);
+            if (i != null) {
+                newOrder[count++] = i;
+                placed[i] = true;
+                if (next[i] < 0) {
+                    first.remove(model);
+                } else {
+                    first.put(model, next[i]);
+                }
+            }
+        }
+        for (int i = 0; i < scene.length; i++) {
+            if (!placed[i]) {
+                newOrder[count++] = i;
+            }
+        }
+
+        order = newOrder;
+        if (depths.length < newOrder.length) {
+            depths = new float[newOrder.length];
+        }
+        sortedScene = scene;
     }
 
     private void clearBuffers() {
-        Util.fill(pixels, settings.bgcolor | settings.mblur);
-        Util.fill(zbuf, 0);
-        Util.fill(modelbuf, null);
+        renderer.clear(settings.bgcolor | settings.mblur, pool);
     }
 
 }
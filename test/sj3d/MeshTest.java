@@ -0,0 +1,139 @@
+package sj3d;
+
+import java.util.ArrayList;
+
+/**
+ * Checks of packed mesh storage.  Run with <code>make test</code>; each check
+ * throws an <code>AssertionError</code> on failure.
+ */
+public final class MeshTest {
+
+    public static void main(String[] args) {
+        mixedNormalsGrowTogether();
+        mixedNormalsRender();
+        vertexViewsWriteThrough();
+        oldCallPattern();
+        faceNormalsAreCopies();
+        System.out.println("MeshTest passed");
+    }
+
+    // A fan with a normal on its first vertex only, if any, and enough
+    // vertices after it to grow the position array
+    private static Model mixedNormals(int vertices, boolean firstNormal) {
+        final Model m = new Model();
+        m.addFrame();
+        if (firstNormal) {
+            m.addVertex(0, 0, 0, 0, 0, -1);
+        } else {
+            m.addVertex(0, 0, 0);
+        }
+        for (int i = 1; i < vertices; ++i) {
+            final double a = Math.PI * 2 * i / vertices;
+            m.addVertex((float) Math.cos(a), (float) Math.sin(a), 0);
+        }
+        for (int i = 1; i + 1 < vertices; ++i) {
+            m.addTriangle(0, i + 1, i);
+        }
+        return m;
+    }
+
+    private static void mixedNormalsGrowTogether() {
+        final Mesh.Frame frame = mixedNormals(100, true).frameData();
+        check(frame.normals.length >= frame.positions.length, "normals shorter than positions");
+        check(frame.normals[2] == -1 && frame.normals[5] == 0, "normals not kept");
+    }
+
+    private static void mixedNormalsRender() {
+        checkLit(mixedNormals(8, true));
+        checkLit(mixedNormals(100, true));
+        checkLit(mixedNormals(100, false));
+    }
+
+    // Vertices without normals are lit by the triangle normal, which faces
+    // the light, rather than not at all
+    private static void checkLit(Model m) {
+        m.material = Material.smooth(0xffffff);
+        final int[] pixels = new int[64 * 64];
+        try (World world = new World(64, 64, new RenderSettings(), pixels)) {
+            world.setLighting(0, 0, -1, 1, 0);
+            world.addModel(m);
+            world.render();
+        }
+        check((pixels[32 * 64 + 24] & 0xff) > 0x80, "vertex without normal left unlit");
+    }
+
+    private static void vertexViewsWriteThrough() {
+        final Model m = new Model();
+        m.addFrame();
+        final Vertex added = m.addVertex(1, 2, 3);
+        check(added.getNormal() == null, "new vertex has a normal");
+        added.setNormal(0, 1, 0);
+        check(m.getVertex(0).getNormal().y == 1, "normal set on added vertex lost");
+        m.getVertex(0).setNormal(1, 0, 0);
+        check(added.getNormal().x == 1, "normal set on vertex view lost");
+    }
+
+    // Frames filled through the list addFrame returns, and normals assigned
+    // straight to n, as code written before packed storage does
+    @SuppressWarnings("deprecation")
+    private static void oldCallPattern() {
+        final Model m = new Model();
+        final ArrayList<Vertex> first = m.addFrame();
+        final ArrayList<Vertex> second = m.addFrame();
+        first.add(new Vertex(0, 0, 0));
+        for (int i = 0; i < 8; ++i) {
+            final double a = Math.PI * 2 * i / 8;
+            final Vertex v = new Vertex((float) Math.cos(a), (float) Math.sin(a), 0);
+            v.n = new Vector(0, 0, -1);
+            second.add(v);
+        }
+        for (int i = 0; i + 2 < 8; ++i) {
+            m.addTriangle(0, i + 2, i + 1);
+        }
+        check(m.numVertices() == 1, "vertices added to the wrong frame");
+        check(second.size() == 8 && second.get(3).getNormal().z == -1, "frame list lost a vertex");
+        m.setFrame(1);
+        check(m.numVertices() == 8 && m.getVertex(2).x == second.get(2).x, "frame list not written through");
+
+        m.getVertex(0).n = new Vector(0, 1, 0);
+        check(m.getVertex(0).getNormal().y == 1, "normal assigned to n lost");
+        final Vertex v = m.getVertex(1);
+        v.n = null;
+        m.material = Material.smooth(0xffffff);
+        try (World world = new World(64, 64, new RenderSettings(), new int[64 * 64])) {
+            world.addModel(m);
+            world.render();
+        }
+        final float[] normals = m.frameData().normals;
+        check(normals[3] == 0 && normals[4] == 0 && normals[5] == 0, "normal cleared through n not written back");
+        m.getVertex(0).n.z = -1;
+        m.getVertex(0).n.y = 0;
+        check(m.getVertex(0).getNormal().z == -1, "normal changed through n lost");
+
+        boolean threw = false;
+        try {
+            second.remove(0);
+        } catch (UnsupportedOperationException e) {
+            threw = true;
+        }
+        check(threw, "vertex removed from a frame");
+    }
+
+    private static void faceNormalsAreCopies() {
+        final Model m = mixedNormals(8, false);
+        final Triangle t = m.getTriangle(2);
+        final Vector n = t.getNormal();
+        check(n.z == -1 && n != t.getNormal(), "face normal not a copy");
+        n.z = 1;
+        final Vector added = m.addTriangle(0, 3, 2).getNormal();
+        check(t.getNormal().z == -1 && added.z == -1, "face normal wrong");
+        check(new Triangle(m, 0, 3, 2).getNormal().z == -1, "face normal of a new triangle wrong");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+}